@@ -24,20 +24,25 @@ import android.app.ActivityManager;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.ViewGroup;
 
 import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.charge.CapacityEstimator;
+import com.ominous.batterynotification.charge.CapacitySink;
+import com.ominous.batterynotification.dialog.HistoryDialog;
 import com.ominous.batterynotification.dialog.TextDialog;
+import com.ominous.batterynotification.monitor.MonitorClient;
 import com.ominous.batterynotification.service.BatteryService;
+import com.ominous.batterynotification.util.NotificationTemplate;
 import com.ominous.batterynotification.util.NotificationUtils;
+import com.ominous.batterynotification.util.StorageUtils;
 
 import java.io.DataOutputStream;
 import java.util.concurrent.ExecutorService;
@@ -55,6 +60,7 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.fragment.app.FragmentActivity;
 import androidx.preference.Preference;
+import androidx.preference.EditTextPreference;
 import androidx.preference.PreferenceFragmentCompat;
 import androidx.preference.SwitchPreference;
 
@@ -112,11 +118,17 @@ public class SettingsActivity extends AppCompatActivity {
         );
     }
 
-    public static class SettingsFragment extends PreferenceFragmentCompat implements Preference.OnPreferenceChangeListener, Preference.OnPreferenceClickListener {
+    public static class SettingsFragment extends PreferenceFragmentCompat implements Preference.OnPreferenceChangeListener, Preference.OnPreferenceClickListener, SharedPreferences.OnSharedPreferenceChangeListener {
         private SwitchPreference timeRemainingPreference;
         private SwitchPreference notificationPreference;
         private SwitchPreference updateImmediatelyPreference;
         private SwitchPreference fahrenheitPreference;
+        private SwitchPreference alertsPreference;
+        private SwitchPreference pauseScreenOffPreference;
+        private SwitchPreference sparklinePreference;
+        private SwitchPreference historyPreference;
+        private EditTextPreference titleTemplatePreference;
+        private EditTextPreference contentTemplatePreference;
 
         private TextDialog timeRemainingFailureDialog;
         private TextDialog adbInstructionsDialog;
@@ -127,9 +139,7 @@ public class SettingsActivity extends AppCompatActivity {
                     if (r) {
                         startNotification(getContext());
 
-                        updateImmediatelyPreference.setEnabled(true);
-                        fahrenheitPreference.setEnabled(true);
-                        timeRemainingPreference.setEnabled(true);
+                        setNotificationDependentsEnabled(true);
                     } else {
                         notificationPreference.setChecked(false);
                     }
@@ -145,6 +155,16 @@ public class SettingsActivity extends AppCompatActivity {
             return preference;
         }
 
+        private EditTextPreference setUpEditTextPreference(String key) {
+            EditTextPreference preference = findPreference(key);
+
+            if (preference != null) {
+                preference.setOnPreferenceChangeListener(this);
+            }
+
+            return preference;
+        }
+
         private Preference setUpPreference(String key) {
             Preference preference = findPreference(key);
 
@@ -157,6 +177,10 @@ public class SettingsActivity extends AppCompatActivity {
 
         @Override
         public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
+            if (Build.VERSION.SDK_INT >= 24) {
+                getPreferenceManager().setStorageDeviceProtected();
+            }
+
             getPreferenceManager().setSharedPreferencesName(getString(R.string.preference_filename));
             addPreferencesFromResource(R.xml.settings);
 
@@ -164,7 +188,15 @@ public class SettingsActivity extends AppCompatActivity {
             fahrenheitPreference = setUpSwitchPreference(getString(R.string.preference_fahrenheit));
             updateImmediatelyPreference = setUpSwitchPreference(getString(R.string.preference_immediate));
             timeRemainingPreference = setUpSwitchPreference(getString(R.string.preference_time_remaining));
+            alertsPreference = setUpSwitchPreference(getString(R.string.preference_alerts));
+            pauseScreenOffPreference = setUpSwitchPreference(getString(R.string.preference_pause_screen_off));
+            sparklinePreference = setUpSwitchPreference(getString(R.string.preference_sparkline));
+            historyPreference = setUpSwitchPreference(getString(R.string.preference_history));
+            titleTemplatePreference = setUpEditTextPreference(getString(R.string.preference_title_template));
+            contentTemplatePreference = setUpEditTextPreference(getString(R.string.preference_content_template));
             Preference openNotificationSettings = setUpPreference(getString(R.string.preference_notification_settings));
+            setUpPreference(getString(R.string.preference_trace_log));
+            setUpPreference(getString(R.string.preference_history_chart));
 
             if (Build.VERSION.SDK_INT < 21) {
                 openNotificationSettings.setEnabled(false);
@@ -172,18 +204,26 @@ public class SettingsActivity extends AppCompatActivity {
                 timeRemainingPreference.setChecked(false);
             }
 
+            if (Build.VERSION.SDK_INT < 24) {
+                sparklinePreference.setEnabled(false);
+                sparklinePreference.setChecked(false);
+            }
+
             if (!notificationPreference.isChecked()) {
-                updateImmediatelyPreference.setEnabled(false);
-                fahrenheitPreference.setEnabled(false);
-                timeRemainingPreference.setEnabled(false);
+                setNotificationDependentsEnabled(false);
             }
 
             Context context = getContext();
 
             if (context != null) {
+                pauseScreenOffPreference.setSummary(getString(R.string.preference_pause_screen_off_desc_summary,
+                        MonitorClient.getMonitorState(context).getLong(getString(R.string.preference_refreshes_skipped), 0)));
+
+                setCapacitySummary(context);
+
                 if (NotificationUtils.canShowNotifications(context)) {
                     if (notificationPreference.isChecked()) {
-                        NotificationUtils.startBatteryNotification(context);
+                        MonitorClient.startNotification(context);
                     }
                 } else {
                     notificationPreference.setChecked(false);
@@ -195,10 +235,77 @@ public class SettingsActivity extends AppCompatActivity {
             }
         }
 
+        private void setCapacitySummary(Context context) {
+            Preference capacityPreference = findPreference(getString(R.string.preference_capacity));
+            SharedPreferences monitorState = MonitorClient.getMonitorState(context);
+            CapacityEstimator capacityEstimator = CapacitySink.readCapacityEstimator(context, monitorState);
+            int capacity = capacityEstimator.getCapacity();
+            int designCapacity = CapacitySink.readDesignCapacity(context, monitorState);
+
+            if (capacityPreference != null && capacity != CapacityEstimator.UNKNOWN) {
+                int health = CapacitySink.getHealth(capacity, designCapacity);
+
+                capacityPreference.setSummary(health == CapacityEstimator.UNKNOWN ?
+                        getString(R.string.preference_capacity_mah_summary, capacity, capacityEstimator.getSessions()) :
+                        getString(R.string.preference_capacity_health_summary, health, capacity,
+                                designCapacity, capacityEstimator.getSessions()));
+            }
+        }
+
+        private void setNotificationDependentsEnabled(boolean enabled) {
+            updateImmediatelyPreference.setEnabled(enabled);
+            fahrenheitPreference.setEnabled(enabled);
+            timeRemainingPreference.setEnabled(enabled);
+            alertsPreference.setEnabled(enabled);
+            pauseScreenOffPreference.setEnabled(enabled);
+            sparklinePreference.setEnabled(enabled && Build.VERSION.SDK_INT >= 24);
+            historyPreference.setEnabled(enabled);
+            titleTemplatePreference.setEnabled(enabled);
+            contentTemplatePreference.setEnabled(enabled);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+
+            SharedPreferences sharedPreferences = getPreferenceManager().getSharedPreferences();
+
+            if (sharedPreferences != null) {
+                sharedPreferences.registerOnSharedPreferenceChangeListener(this);
+            }
+        }
+
+        @Override
+        public void onPause() {
+            SharedPreferences sharedPreferences = getPreferenceManager().getSharedPreferences();
+
+            if (sharedPreferences != null) {
+                sharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
+            }
+
+            super.onPause();
+        }
+
+        //Called once the new value is stored, unlike onPreferenceChange, so the monitor can read it
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            Context context = getContext();
+
+            if (context != null) {
+                if (getString(R.string.preference_notification).equals(key) &&
+                        sharedPreferences.getBoolean(key, false) &&
+                        NotificationUtils.canShowNotifications(context)) {
+                    startNotification(context);
+                } else {
+                    MonitorClient.onPreferencesChanged(context);
+                }
+            }
+        }
+
         private void startNotification(Context context) {
-            NotificationUtils.startBatteryNotification(context);
+            MonitorClient.startNotification(context);
 
-            if (context.getSharedPreferences(getString(R.string.preference_filename), Context.MODE_PRIVATE)
+            if (StorageUtils.getPreferences(context)
                     .getBoolean(getString(R.string.preference_immediate), false)) {
                 context.startService(new Intent(context, BatteryService.class));
             }
@@ -206,27 +313,42 @@ public class SettingsActivity extends AppCompatActivity {
 
         @Override
         public boolean onPreferenceChange(Preference preference, Object newValue) {
-            boolean enabled = (Boolean) newValue;
             String preferenceKey = preference.getKey();
             Context context = getContext();
 
+            if (preferenceKey.equals(getString(R.string.preference_title_template)) ||
+                    preferenceKey.equals(getString(R.string.preference_content_template))) {
+                try {
+                    NotificationTemplate.compile((String) newValue);
+                } catch (IllegalArgumentException e) {
+                    if (context != null) {
+                        new TextDialog(context)
+                                .setTitle(getString(R.string.dialog_template_title))
+                                .setContent(e.getMessage())
+                                .setButton(DialogInterface.BUTTON_POSITIVE, getString(R.string.dialog_button_close), null)
+                                .show();
+                    }
+
+                    return false;
+                }
+
+                return true;
+            }
+
+            boolean enabled = (Boolean) newValue;
+
             if (context != null) {
                 if (preferenceKey.equals(getString(R.string.preference_notification))) {
                     if (enabled) {
+                        //The notification is started by onSharedPreferenceChanged once this is saved
                         if (NotificationUtils.canShowNotifications(getContext())) {
-                            startNotification(context);
-
-                            updateImmediatelyPreference.setEnabled(true);
-                            fahrenheitPreference.setEnabled(true);
-                            timeRemainingPreference.setEnabled(true);
+                            setNotificationDependentsEnabled(true);
                         } else {
                             requestNotificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
                         }
                     } else {
                         NotificationUtils.cancelBatteryNotification(context);
-                        updateImmediatelyPreference.setEnabled(false);
-                        fahrenheitPreference.setEnabled(false);
-                        timeRemainingPreference.setEnabled(false);
+                        setNotificationDependentsEnabled(false);
                     }
                 } else if (preferenceKey.equals(getString(R.string.preference_immediate))) {
                     Intent batteryServiceIntent = new Intent(context, BatteryService.class);
@@ -254,11 +376,6 @@ public class SettingsActivity extends AppCompatActivity {
                 }
             }
 
-            if (enabled || !preferenceKey.equals(getString(R.string.preference_notification))) {
-                new Handler(Looper.getMainLooper()).postDelayed(() ->
-                        NotificationUtils.updateBatteryNotification(context), 1000);
-            }
-
             return true;
         }
 
@@ -267,6 +384,19 @@ public class SettingsActivity extends AppCompatActivity {
             if (Build.VERSION.SDK_INT > 21
                     && preference.getKey().equals(getString(R.string.preference_notification_settings))) {
                 openNotificationSettings();
+            } else if (preference.getKey().equals(getString(R.string.preference_trace_log)) && getContext() != null) {
+                //The trace lives in the monitor process
+                MonitorClient.requestTraceLog(getContext(), traceLog -> {
+                    if (getContext() != null) {
+                        new TextDialog(getContext())
+                                .setTitle(getString(R.string.preference_trace_log_desc))
+                                .setContent(traceLog)
+                                .setButton(DialogInterface.BUTTON_POSITIVE, getString(R.string.dialog_button_close), null)
+                                .show();
+                    }
+                });
+            } else if (preference.getKey().equals(getString(R.string.preference_history_chart)) && getContext() != null) {
+                new HistoryDialog(getContext()).show();
             }
 
             return true;
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.alert;
+
+import android.os.BatteryManager;
+
+//Evaluates every alert in constant time without allocating. Each alert fires once, and is only
+//re-armed after its reset condition is met (hysteresis) and its cooldown has passed
+public class AlertEngine {
+    public final static int ALERT_HIGH_TEMPERATURE = 0, ALERT_CHARGED = 1, ALERT_LOW = 2, ALERT_HEALTH = 3, ALERT_COUNT = 4;
+    //Raised by DrainDetector instead
+    public final static int ALERT_DRAIN = ALERT_COUNT;
+    private final static int TEMPERATURE_HYSTERESIS = 20, LEVEL_HYSTERESIS = 2;
+    private final static long COOLDOWN = 15 * 60 * 1000;
+
+    private final boolean[] armed = new boolean[ALERT_COUNT];
+    private final long[] lastFired = new long[ALERT_COUNT];
+
+    private int temperatureThreshold;
+    private int chargedThreshold;
+    private int lowThreshold;
+
+    public AlertEngine() {
+        for (int i = 0; i < ALERT_COUNT; i++) {
+            armed[i] = true;
+            lastFired[i] = -COOLDOWN;
+        }
+    }
+
+    //temperatureThreshold is in tenths of a degree Celsius, like EXTRA_TEMPERATURE
+    public synchronized void configure(int temperatureThreshold, int chargedThreshold, int lowThreshold) {
+        this.temperatureThreshold = temperatureThreshold;
+        this.chargedThreshold = chargedThreshold;
+        this.lowThreshold = lowThreshold;
+    }
+
+    //Returns a bitmask of the alerts that fired, indexed by ALERT_*
+    public synchronized int evaluate(long now, int level, int temperature, int health, boolean onCharger) {
+        return check(ALERT_HIGH_TEMPERATURE, now,
+                temperature >= temperatureThreshold,
+                temperature < temperatureThreshold - TEMPERATURE_HYSTERESIS) |
+                check(ALERT_CHARGED, now,
+                        onCharger && level >= chargedThreshold,
+                        !onCharger || level < chargedThreshold - LEVEL_HYSTERESIS) |
+                check(ALERT_LOW, now,
+                        !onCharger && level >= 0 && level <= lowThreshold,
+                        onCharger || level > lowThreshold + LEVEL_HYSTERESIS) |
+                check(ALERT_HEALTH, now,
+                        isBadHealth(health),
+                        health == BatteryManager.BATTERY_HEALTH_GOOD);
+    }
+
+    //The level the next charged or low alert is waiting for, or -1 if there is none
+    public synchronized int getLevelTarget(boolean onCharger) {
+        if (onCharger) {
+            return armed[ALERT_CHARGED] ? chargedThreshold : -1;
+        } else {
+            return armed[ALERT_LOW] ? lowThreshold : -1;
+        }
+    }
+
+    private int check(int alert, long now, boolean isTriggered, boolean isReset) {
+        if (armed[alert]) {
+            if (isTriggered && now - lastFired[alert] >= COOLDOWN) {
+                armed[alert] = false;
+                lastFired[alert] = now;
+
+                return 1 << alert;
+            }
+        } else if (isReset) {
+            armed[alert] = true;
+        }
+
+        return 0;
+    }
+
+    private static boolean isBadHealth(int health) {
+        return switch (health) {
+            case BatteryManager.BATTERY_HEALTH_COLD,
+                 BatteryManager.BATTERY_HEALTH_DEAD,
+                 BatteryManager.BATTERY_HEALTH_OVERHEAT,
+                 BatteryManager.BATTERY_HEALTH_OVER_VOLTAGE,
+                 BatteryManager.BATTERY_HEALTH_UNSPECIFIED_FAILURE -> true;
+            default -> false;
+        };
+    }
+}
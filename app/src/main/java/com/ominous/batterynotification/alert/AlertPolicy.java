@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.alert;
+
+import android.os.BatteryManager;
+
+import com.ominous.batterynotification.work.UpdateScheduler;
+
+//Everything AlertSink decides on a sample, without touching Android, so the simulation harness runs
+//the same alerts and level alarms as the device
+public class AlertPolicy {
+    private final AlertEngine alertEngine = new AlertEngine();
+    private final LevelAlarmPlanner levelAlarmPlanner = new LevelAlarmPlanner();
+    private final DrainDetector drainDetector = new DrainDetector();
+
+    public AlertEngine getAlertEngine() {
+        return alertEngine;
+    }
+
+    public DrainDetector getDrainDetector() {
+        return drainDetector;
+    }
+
+    //Returns a bitmask of the alerts that fired, indexed by AlertEngine.ALERT_*. The foreground service
+    //already sees every level change, so it does not need a level alarm
+    public int evaluate(UpdateScheduler scheduler, long now, int level, int temperature, int health, int status,
+                        boolean isUpdatingImmediately, boolean screenOn, long screenChangedAt) {
+        boolean onCharger = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+        int firedAlerts = alertEngine.evaluate(now, level, temperature, health, onCharger);
+
+        if (levelAlarmPlanner.update(now, level, onCharger,
+                isUpdatingImmediately ? -1 : alertEngine.getLevelTarget(onCharger))) {
+            long alarmTime = levelAlarmPlanner.getAlarmTime();
+
+            if (alarmTime == LevelAlarmPlanner.NO_ALARM) {
+                scheduler.stopLevelAlarm();
+            } else {
+                scheduler.setLevelAlarm(alarmTime);
+            }
+        }
+
+        if (drainDetector.update(now, level, status == BatteryManager.BATTERY_STATUS_DISCHARGING, screenOn, screenChangedAt)) {
+            firedAlerts |= 1 << AlertEngine.ALERT_DRAIN;
+        }
+
+        return firedAlerts;
+    }
+
+    public void clear(UpdateScheduler scheduler) {
+        levelAlarmPlanner.clear();
+        scheduler.stopLevelAlarm();
+    }
+}
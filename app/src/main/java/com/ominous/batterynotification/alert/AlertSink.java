@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.alert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleSink;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
+import com.ominous.batterynotification.receiver.ScreenStateReceiver;
+import com.ominous.batterynotification.trace.TraceRecorder;
+import com.ominous.batterynotification.util.BatterySample;
+import com.ominous.batterynotification.util.NotificationUtils;
+import com.ominous.batterynotification.util.StorageUtils;
+import com.ominous.batterynotification.work.BatteryWorkManager;
+
+public class AlertSink implements BatterySampleSink, SharedPreferences.OnSharedPreferenceChangeListener {
+    private final AlertPolicy alertPolicy = new AlertPolicy();
+    private final long[] storedBaselines = new long[2];
+    private long storedCusums, storedLevel, storedLevelEnteredAt, storedLastAlert;
+    private final Context context;
+    private boolean isEnabled;
+    private boolean isUpdatingImmediately;
+
+    public AlertSink(Context context) {
+        this.context = context.getApplicationContext();
+
+        SharedPreferences sharedPreferences = StorageUtils.getPreferences(context);
+
+        loadPreferences(sharedPreferences);
+        MonitorPreferences.registerListener(this);
+
+        loadDrainState(MonitorPreferences.getMonitorState(context));
+    }
+
+    private void loadDrainState(SharedPreferences monitorState) {
+        DrainDetector drainDetector = alertPolicy.getDrainDetector();
+
+        for (int screen = DrainDetector.SCREEN_OFF; screen <= DrainDetector.SCREEN_ON; screen++) {
+            storedBaselines[screen] = monitorState.getLong(getBaselineKey(screen), DrainDetector.NO_BASELINE);
+            drainDetector.setBaseline(screen, storedBaselines[screen]);
+        }
+
+        drainDetector.setCusums(monitorState.getLong(context.getString(R.string.preference_drain_cusums), 0));
+
+        long levelEnteredAt = monitorState.getLong(context.getString(R.string.preference_drain_level_time), 0);
+
+        if (MonitorPreferences.isSameBoot(context) && levelEnteredAt <= SystemClock.elapsedRealtime()) {
+            drainDetector.setLevel(monitorState.getLong(context.getString(R.string.preference_drain_level), DrainDetector.NO_LEVEL), levelEnteredAt);
+        }
+
+        //Stored by the wall clock so the rate limit holds across reboots. A clock set back counts as just now
+        long lastAlertTime = monitorState.getLong(context.getString(R.string.preference_drain_last_alert), DrainDetector.NO_ALERT);
+
+        if (lastAlertTime != DrainDetector.NO_ALERT) {
+            drainDetector.setLastAlert(SystemClock.elapsedRealtime() - Math.max(0, System.currentTimeMillis() - lastAlertTime));
+        }
+
+        storedCusums = drainDetector.getCusums();
+        storedLevel = drainDetector.getLevel();
+        storedLevelEnteredAt = drainDetector.getLevelEnteredAt();
+        storedLastAlert = drainDetector.getLastAlert();
+    }
+
+    private String getBaselineKey(int screen) {
+        return context.getString(screen == DrainDetector.SCREEN_ON ?
+                R.string.preference_drain_baseline_screen_on :
+                R.string.preference_drain_baseline_screen_off);
+    }
+
+    private void loadPreferences(SharedPreferences sharedPreferences) {
+        isEnabled = sharedPreferences.getBoolean(context.getString(R.string.preference_alerts), false);
+        isUpdatingImmediately = sharedPreferences.getBoolean(context.getString(R.string.preference_immediate), false);
+
+        alertPolicy.getAlertEngine().configure(
+                sharedPreferences.getInt(context.getString(R.string.preference_alert_temperature),
+                        context.getResources().getInteger(R.integer.default_alert_temperature)) * 10,
+                sharedPreferences.getInt(context.getString(R.string.preference_alert_charged),
+                        context.getResources().getInteger(R.integer.default_alert_charged)),
+                sharedPreferences.getInt(context.getString(R.string.preference_alert_low),
+                        context.getResources().getInteger(R.integer.default_alert_low)));
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        loadPreferences(sharedPreferences);
+
+        if (!isEnabled) {
+            alertPolicy.clear(BatteryWorkManager.getScheduler(context));
+        }
+    }
+
+    @Override
+    public int getFields(Context context) {
+        return isEnabled ?
+                BatterySample.FIELD_LEVEL | BatterySample.FIELD_TEMPERATURE | BatterySample.FIELD_HEALTH | BatterySample.FIELD_STATUS :
+                0;
+    }
+
+    @Override
+    public void onSample(Context context, BatterySample sample) {
+        if (isEnabled) {
+            long start = TraceRecorder.begin(TraceRecorder.EVENT_ALERTS);
+            int firedAlerts = alertPolicy.evaluate(
+                    BatteryWorkManager.getScheduler(context),
+                    sample.elapsedRealtime,
+                    sample.level,
+                    sample.temperature,
+                    sample.health,
+                    sample.status,
+                    isUpdatingImmediately,
+                    ScreenStateReceiver.isScreenOn(),
+                    ScreenStateReceiver.getScreenChangedAt());
+
+            storeDrainState(ScreenStateReceiver.isScreenOn() ? DrainDetector.SCREEN_ON : DrainDetector.SCREEN_OFF);
+
+            TraceRecorder.end(TraceRecorder.EVENT_ALERTS, start);
+
+            for (int alert = 0; firedAlerts != 0; alert++, firedAlerts >>>= 1) {
+                if ((firedAlerts & 1) != 0) {
+                    NotificationUtils.postAlertNotification(context, alert, sample);
+                }
+            }
+        }
+    }
+
+    //The state only moves when the level changes, so this rarely writes
+    private void storeDrainState(int screen) {
+        DrainDetector drainDetector = alertPolicy.getDrainDetector();
+        long baseline = drainDetector.getBaseline(screen);
+        long cusums = drainDetector.getCusums();
+        long level = drainDetector.getLevel();
+        long levelEnteredAt = drainDetector.getLevelEnteredAt();
+        long lastAlert = drainDetector.getLastAlert();
+
+        if (baseline != storedBaselines[screen] || cusums != storedCusums || level != storedLevel ||
+                levelEnteredAt != storedLevelEnteredAt || lastAlert != storedLastAlert) {
+            SharedPreferences.Editor editor = MonitorPreferences.getMonitorState(context).edit()
+                    .putLong(getBaselineKey(screen), baseline)
+                    .putLong(context.getString(R.string.preference_drain_cusums), cusums)
+                    .putLong(context.getString(R.string.preference_drain_level), level)
+                    .putLong(context.getString(R.string.preference_drain_level_time), levelEnteredAt);
+
+            if (lastAlert != storedLastAlert) {
+                editor.putLong(context.getString(R.string.preference_drain_last_alert),
+                        System.currentTimeMillis() - (SystemClock.elapsedRealtime() - lastAlert));
+            }
+
+            editor.apply();
+
+            storedBaselines[screen] = baseline;
+            storedCusums = cusums;
+            storedLevel = level;
+            storedLevelEnteredAt = levelEnteredAt;
+            storedLastAlert = lastAlert;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.alert;
+
+//Flags discharge that is unusually fast for the screen state, like an app holding a wakelock. The
+//rate is measured over each level drop, so nothing is sampled beyond the regular updates. Each
+//screen state keeps an EWMA mean and variance of the rate as its baseline, and a one-sided CUSUM of
+//the standardized rates catches both sudden jumps and smaller increases that keep going
+public class DrainDetector {
+    public final static int SCREEN_OFF = 0, SCREEN_ON = 1;
+    //A NaN mean, which a learned baseline never has. 0 would be a zero mean and variance
+    public final static long NO_BASELINE = (long) Float.floatToIntBits(Float.NaN) << 32;
+    public final static long NO_LEVEL = 0, NO_ALERT = Long.MIN_VALUE;
+    private final static double SMOOTHING = 0.1, CUSUM_SLACK = 0.5, CUSUM_LIMIT = 4;
+    //Rates this far above the baseline are not learned, so a long anomaly does not become the baseline
+    private final static double LEARNING_LIMIT = 3;
+    //Percent per hour, so a very steady baseline does not make every small change an anomaly
+    private final static double MIN_DEVIATION = 0.5;
+    private final static int WARMUP = 8;
+    private final static long ALERT_INTERVAL = 6 * 60 * 60 * 1000;
+
+    private final double[] means = new double[2];
+    private final double[] variances = new double[2];
+    private final double[] cusums = new double[2];
+    private final int[] counts = new int[2];
+    private long lastAlert = NO_ALERT;
+
+    private int lastLevel = -1;
+    private long levelEnteredAt;
+    private int levelScreen;
+    private boolean isLevelEntryObserved;
+
+    //Returns true if an alert should be raised. Rates are only measured between two observed level
+    //changes with the screen in the same state throughout
+    public synchronized boolean update(long now, int level, boolean discharging, boolean screenOn, long screenChangedAt) {
+        int screen = screenOn ? SCREEN_ON : SCREEN_OFF;
+
+        if (!discharging || level < 0) {
+            lastLevel = -1;
+
+            return false;
+        } else if (lastLevel < 0 || level > lastLevel || screen != levelScreen || screenChangedAt > levelEnteredAt) {
+            lastLevel = level;
+            levelEnteredAt = now;
+            levelScreen = screen;
+            isLevelEntryObserved = false;
+
+            return false;
+        } else if (level < lastLevel) {
+            boolean isAnomaly = isLevelEntryObserved && now > levelEnteredAt &&
+                    observe(screen, (lastLevel - level) * 3600000. / (now - levelEnteredAt), now);
+
+            lastLevel = level;
+            levelEnteredAt = now;
+            isLevelEntryObserved = true;
+
+            return isAnomaly;
+        } else {
+            return false;
+        }
+    }
+
+    private boolean observe(int screen, double rate, long now) {
+        boolean isAnomaly = false;
+
+        if (counts[screen] >= WARMUP) {
+            double z = (rate - means[screen]) / Math.max(MIN_DEVIATION, Math.sqrt(variances[screen]));
+
+            cusums[screen] = Math.max(0, cusums[screen] + z - CUSUM_SLACK);
+
+            if (cusums[screen] > CUSUM_LIMIT) {
+                cusums[screen] = 0;
+
+                if (lastAlert == NO_ALERT || now - lastAlert >= ALERT_INTERVAL) {
+                    lastAlert = now;
+                    isAnomaly = true;
+                }
+            }
+
+            if (z > LEARNING_LIMIT) {
+                return isAnomaly;
+            }
+        }
+
+        //A plain average until warmed up, so the first few rates count equally
+        double smoothing = Math.max(SMOOTHING, 1. / (counts[screen] + 1));
+        double difference = rate - means[screen];
+        double increment = smoothing * difference;
+
+        means[screen] += increment;
+        variances[screen] = (1 - smoothing) * (variances[screen] + difference * increment);
+        counts[screen] = Math.min(WARMUP, counts[screen] + 1);
+
+        return isAnomaly;
+    }
+
+    //The mean and variance as two floats, or NO_BASELINE while still warming up
+    public synchronized long getBaseline(int screen) {
+        return counts[screen] < WARMUP ?
+                NO_BASELINE :
+                ((long) Float.floatToIntBits((float) means[screen]) << 32) | (Float.floatToIntBits((float) variances[screen]) & 0xFFFFFFFFL);
+    }
+
+    public synchronized void setBaseline(int screen, long baseline) {
+        if (baseline != NO_BASELINE) {
+            means[screen] = Float.intBitsToFloat((int) (baseline >>> 32));
+            variances[screen] = Float.intBitsToFloat((int) baseline);
+            counts[screen] = WARMUP;
+        }
+    }
+
+    //The rest of the state is stored too, as the monitor is often killed between level drops. Without it
+    //a restart would drop the evidence gathered so far, the level being timed and the rate limit
+
+    //Both CUSUMs as two floats
+    public synchronized long getCusums() {
+        return ((long) Float.floatToIntBits((float) cusums[SCREEN_ON]) << 32) | (Float.floatToIntBits((float) cusums[SCREEN_OFF]) & 0xFFFFFFFFL);
+    }
+
+    public synchronized void setCusums(long packedCusums) {
+        cusums[SCREEN_ON] = Float.intBitsToFloat((int) (packedCusums >>> 32));
+        cusums[SCREEN_OFF] = Float.intBitsToFloat((int) packedCusums);
+    }
+
+    //The level being timed, or NO_LEVEL. The time it was entered is only meaningful within one boot
+    public synchronized long getLevel() {
+        return lastLevel < 0 ? NO_LEVEL : (lastLevel + 1) | levelScreen << 8 | (isLevelEntryObserved ? 1 << 9 : 0);
+    }
+
+    public synchronized long getLevelEnteredAt() {
+        return levelEnteredAt;
+    }
+
+    public synchronized void setLevel(long level, long levelEnteredAt) {
+        if (level == NO_LEVEL) {
+            lastLevel = -1;
+        } else {
+            lastLevel = (int) (level & 0xFF) - 1;
+            levelScreen = (int) (level >> 8 & 1);
+            isLevelEntryObserved = (level >> 9 & 1) != 0;
+            this.levelEnteredAt = levelEnteredAt;
+        }
+    }
+
+    //NO_ALERT if it never alerted
+    public synchronized long getLastAlert() {
+        return lastAlert;
+    }
+
+    public synchronized void setLastAlert(long lastAlert) {
+        this.lastAlert = lastAlert;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.alert;
+
+//Estimates when a level target will be reached from the recent charge or drain rate, so a single
+//one-shot alarm can be scheduled instead of polling. Each alarm is set halfway to the estimate, so
+//the plan converges on the target as the rate gets measured over longer spans. The alarm is only
+//moved when the target changes, the rate shifts noticeably, or the previous alarm has fired
+public class LevelAlarmPlanner {
+    public final static long NO_ALARM = -1;
+    private final static double RATE_SMOOTHING = 0.3, RATE_SHIFT = 0.25, SAFETY_FACTOR = 0.5;
+    private final static long MIN_DELAY = 60 * 1000, PROBE_DELAY = 15 * 60 * 1000, MAX_DELAY = 6 * 60 * 60 * 1000;
+
+    //Percent per millisecond, indexed by charging state so a reconnect starts from the last known rate
+    private final double[] rates = new double[2];
+    private int lastLevel = -1;
+    private long lastLevelTime;
+    private boolean lastCharging;
+
+    private long plannedTime = NO_ALARM;
+    private double plannedRate;
+    private int plannedTarget = -1;
+
+    //Returns true if the alarm needs to be rescheduled or cancelled, see getAlarmTime()
+    public synchronized boolean update(long now, int level, boolean charging, int target) {
+        int state = charging ? 1 : 0;
+
+        if (lastLevel < 0 || charging != lastCharging || level < 0) {
+            lastLevel = level;
+            lastLevelTime = now;
+            lastCharging = charging;
+        } else if (level != lastLevel && now > lastLevelTime) {
+            double rate = (level - lastLevel) / (double) (now - lastLevelTime);
+
+            rates[state] = rates[state] == 0 ? rate : rates[state] + RATE_SMOOTHING * (rate - rates[state]);
+            lastLevel = level;
+            lastLevelTime = now;
+        }
+
+        double rate = rates[state];
+        long alarmTime = NO_ALARM;
+
+        if (target >= 0 && level >= 0 && (charging ? level < target : level > target)) {
+            if (charging ? rate > 0 : rate < 0) {
+                long delay = (long) ((target - level) / rate * SAFETY_FACTOR) - (now - lastLevelTime);
+
+                alarmTime = now + Math.max(MIN_DELAY, Math.min(MAX_DELAY, delay));
+            } else {
+                //No usable rate yet, so wake up once to measure one
+                alarmTime = now + PROBE_DELAY;
+            }
+        }
+
+        if (alarmTime == NO_ALARM) {
+            boolean wasPlanned = plannedTime != NO_ALARM;
+
+            plannedTime = NO_ALARM;
+            plannedTarget = -1;
+
+            return wasPlanned;
+        } else if (plannedTime == NO_ALARM ||
+                plannedTime <= now ||
+                plannedTarget != target ||
+                Math.abs(rate - plannedRate) > RATE_SHIFT * Math.abs(plannedRate)) {
+            plannedTime = alarmTime;
+            plannedRate = rate;
+            plannedTarget = target;
+
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public synchronized void clear() {
+        plannedTime = NO_ALARM;
+        plannedTarget = -1;
+    }
+
+    public synchronized long getAlarmTime() {
+        return plannedTime;
+    }
+}
@@ -23,16 +23,71 @@ import android.app.Application;
 import android.content.Context;
 import android.os.Build;
 
+import com.ominous.batterynotification.alert.AlertSink;
+import com.ominous.batterynotification.bus.BatterySampleBus;
+import com.ominous.batterynotification.charge.CapacitySink;
+import com.ominous.batterynotification.charge.ChargeCurveSink;
+import com.ominous.batterynotification.history.HistorySink;
+import com.ominous.batterynotification.receiver.ScreenStateReceiver;
+import com.ominous.batterynotification.trace.StallDetector;
+import com.ominous.batterynotification.trace.TriggerStats;
+import com.ominous.batterynotification.util.NotificationSink;
+import com.ominous.batterynotification.util.StorageUtils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
 import me.weishu.reflection.Reflection;
 
+//Runs in both processes. The UI process gets nothing set up here, the :monitor process that hosts
+//BatteryService and BatteryBroadcastReceiver gets the sample bus and the screen state receiver
 public class BatteryNotification extends Application {
+    private final static String MONITOR_PROCESS_SUFFIX = ":monitor";
+
     @Override
     protected void attachBaseContext(Context base) {
         super.attachBaseContext(base);
 
-        if (Build.VERSION.SDK_INT >= 28) {
-            //The nuclear option
+        if (Build.VERSION.SDK_INT >= 28 && isMonitorProcess()) {
+            //The nuclear option. Only the monitor calls hidden APIs, the UI reads their results from the monitor state
             Reflection.unseal(base);
         }
     }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        StorageUtils.migrate(this);
+
+        if (isMonitorProcess()) {
+            TriggerStats.restore(this);
+
+            BatterySampleBus.subscribe(new NotificationSink());
+            BatterySampleBus.subscribe(new AlertSink(this));
+            BatterySampleBus.subscribe(new HistorySink(this));
+            BatterySampleBus.subscribe(new ChargeCurveSink(this));
+            BatterySampleBus.subscribe(new CapacitySink());
+
+            ScreenStateReceiver.register(this);
+            StallDetector.install(this);
+        }
+    }
+
+    private static boolean isMonitorProcess() {
+        String processName;
+
+        if (Build.VERSION.SDK_INT >= 28) {
+            processName = Application.getProcessName();
+        } else {
+            try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/cmdline"))) {
+                processName = reader.readLine();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        return processName != null && processName.trim().endsWith(MONITOR_PROCESS_SUFFIX);
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.bus;
+
+import android.content.Context;
+import android.content.Intent;
+
+import com.ominous.batterynotification.trace.TraceRecorder;
+import com.ominous.batterynotification.trace.TriggerStats;
+import com.ominous.batterynotification.util.BatterySample;
+import com.ominous.batterynotification.util.BatterySnapshot;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.Nullable;
+
+//Produces one BatterySample per update and fans it out to every subscribed sink
+public class BatterySampleBus {
+    private static final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private static final AtomicReference<BatterySample> latestSample = new AtomicReference<>();
+
+    public static void subscribe(BatterySampleSink sink) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.sink == sink) {
+                return;
+            }
+        }
+
+        subscriptions.add(new Subscription(sink));
+    }
+
+    public static void unsubscribe(BatterySampleSink sink) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.sink == sink) {
+                subscriptions.remove(subscription);
+            }
+        }
+    }
+
+    public static void publish(Context context, int source) {
+        int fields = getFields(context);
+
+        //Nobody is listening, so skip querying the sticky intent as well
+        if (fields != 0) {
+            publish(context, BatterySnapshotStore.get(context), fields, source);
+        }
+    }
+
+    public static void publish(Context context, Intent intent, int source) {
+        publish(context, BatterySnapshotStore.update(intent), getFields(context), source);
+    }
+
+    private static void publish(Context context, @Nullable BatterySnapshot snapshot, int fields, int source) {
+        if (snapshot != null && fields != 0) {
+            TraceRecorder.setCurrentSource(source);
+            long statsStart = TriggerStats.begin();
+            long publishStart = TraceRecorder.begin(TraceRecorder.EVENT_PUBLISH);
+
+            long readStart = TraceRecorder.begin(TraceRecorder.EVENT_READ_SAMPLE);
+            BatterySample sample = BatterySample.read(context, snapshot, fields);
+            TraceRecorder.end(TraceRecorder.EVENT_READ_SAMPLE, readStart);
+
+            latestSample.set(sample);
+
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(context, sample);
+            }
+
+            TraceRecorder.end(TraceRecorder.EVENT_PUBLISH, publishStart);
+            TriggerStats.end(context, source, statsStart);
+        }
+    }
+
+    //Only has the fields that were subscribed to when it was read
+    @Nullable
+    public static BatterySample getLatestSample() {
+        return latestSample.get();
+    }
+
+    private static int getFields(Context context) {
+        int fields = 0;
+
+        for (Subscription subscription : subscriptions) {
+            fields |= subscription.sink.getFields(context);
+        }
+
+        return fields;
+    }
+
+    private static class Subscription {
+        private final BatterySampleSink sink;
+        private final AtomicReference<BatterySample> pendingSample = new AtomicReference<>();
+        private final AtomicBoolean isDraining = new AtomicBoolean(false);
+
+        Subscription(BatterySampleSink sink) {
+            this.sink = sink;
+        }
+
+        void offer(Context context, BatterySample sample) {
+            Executor executor = sink.getExecutor();
+
+            if (executor == null) {
+                sink.onSample(context, sample);
+            } else {
+                //Latest wins: a sample that was never picked up is replaced
+                pendingSample.set(sample);
+
+                if (isDraining.compareAndSet(false, true)) {
+                    Context applicationContext = context.getApplicationContext();
+
+                    executor.execute(() -> drain(applicationContext));
+                }
+            }
+        }
+
+        private void drain(Context applicationContext) {
+            while (true) {
+                BatterySample sample = pendingSample.getAndSet(null);
+
+                if (sample != null) {
+                    sink.onSample(applicationContext, sample);
+                } else {
+                    isDraining.set(false);
+
+                    //A sample may have arrived between the read and the release
+                    if (pendingSample.get() == null || !isDraining.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
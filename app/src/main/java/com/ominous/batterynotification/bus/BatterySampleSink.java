@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.bus;
+
+import android.content.Context;
+
+import com.ominous.batterynotification.util.BatterySample;
+
+import java.util.concurrent.Executor;
+
+import androidx.annotation.Nullable;
+
+public interface BatterySampleSink {
+    //Fields this sink reads from the sample. Fields no sink asks for are never queried
+    int getFields(Context context);
+
+    //Null delivers inline on the publishing thread, otherwise only the latest pending sample is delivered
+    @Nullable
+    default Executor getExecutor() {
+        return null;
+    }
+
+    void onSample(Context context, BatterySample sample);
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.bus;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.util.BatterySnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+//The latest battery state for the whole process. Snapshots are replaced whole through an atomic
+//reference, so readers on any thread never block or allocate. While BatteryService's receiver is
+//registered every change arrives here, so the sticky intent does not have to be queried at all
+public class BatterySnapshotStore {
+    //Otherwise a snapshot is only reused for triggers that arrive together
+    private final static long MAX_AGE = 1000;
+    private static final IntentFilter batteryIntentFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+    private static final AtomicReference<BatterySnapshot> latestSnapshot = new AtomicReference<>();
+    private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private static volatile boolean isTracking = false;
+
+    public static BatterySnapshot update(Intent intent) {
+        return update(BatterySnapshot.read(intent));
+    }
+
+    @VisibleForTesting
+    static BatterySnapshot update(BatterySnapshot snapshot) {
+        BatterySnapshot previous;
+
+        //Producers run on different threads, so an older snapshot never replaces a newer one
+        do {
+            previous = latestSnapshot.get();
+        } while ((previous == null || previous.elapsedRealtime <= snapshot.elapsedRealtime) &&
+                !latestSnapshot.compareAndSet(previous, snapshot));
+
+        return snapshot;
+    }
+
+    @Nullable
+    public static BatterySnapshot get(Context context) {
+        BatterySnapshot snapshot = latestSnapshot.get();
+
+        if (snapshot != null && (isTracking || SystemClock.elapsedRealtime() - snapshot.elapsedRealtime <= MAX_AGE)) {
+            hits.incrementAndGet();
+
+            return snapshot;
+        }
+
+        misses.incrementAndGet();
+
+        Intent intent = context.registerReceiver(null, batteryIntentFilter);
+
+        return intent == null ? snapshot : update(intent);
+    }
+
+    //Never queries the sticky intent
+    @Nullable
+    public static BatterySnapshot peek() {
+        return latestSnapshot.get();
+    }
+
+    //For fields that are only needed on the charger. Plugging in invalidates the store, so a snapshot
+    //that says unplugged holds until the next battery broadcast
+    public static boolean isUnplugged() {
+        BatterySnapshot snapshot = latestSnapshot.get();
+
+        return snapshot != null && snapshot.plugged == 0;
+    }
+
+    //For when the state is known to have changed before the next battery broadcast arrives
+    public static void invalidate() {
+        latestSnapshot.set(null);
+    }
+
+    public static void setTracking(boolean isTracking) {
+        BatterySnapshotStore.isTracking = isTracking;
+    }
+
+    public static boolean isTracking() {
+        return isTracking;
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+}
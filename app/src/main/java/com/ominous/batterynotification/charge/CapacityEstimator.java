@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.charge;
+
+//Measures the full capacity from the charge counter. A session runs from the first to the last level
+//change seen while charging, so both ends sit on a level edge, and the charge counted between them
+//is scaled to 100%. Each session is folded into a running estimate weighted by its span, and sessions
+//too far from it are rejected. Only the estimate, its deviation, its weight and the counts are kept,
+//along with the levels and counters of the open session
+public class CapacityEstimator {
+    public final static int UNKNOWN = -1;
+    //Also what an estimator with nothing measured packs to
+    public final static long NO_STATE = 0;
+    //Also what an estimator that has not seen a charge packs to
+    public final static long NO_SESSION = 0;
+    //Shorter sessions are dominated by level rounding and late updates
+    private final static int MIN_SPAN = 10;
+    private final static int WARMUP = 3;
+    //In full charges, so old sessions keep fading out as the battery wears
+    private final static double MAX_WEIGHT = 5;
+    private final static double REJECTION_LIMIT = 3, MIN_DEVIATION = 0.02;
+    //Rejected in a row before the estimate is trusted less than the new sessions
+    private final static int MAX_REJECTIONS = 3;
+    //mAh, anything outside is a counter in the wrong unit or a broken gauge
+    private final static double MIN_CAPACITY = 500, MAX_CAPACITY = 50000;
+    //Bits of each count in the low half of the fit, which saturate instead of wrapping
+    private final static int SESSION_BITS = 16, REJECTED_BITS = 12, CONSECUTIVE_BITS = 4;
+
+    private double capacity;
+    private double deviation;
+    private double weight;
+    private int sessions;
+    private int rejected;
+    private int consecutiveRejections;
+
+    private int lastLevel = -1;
+    private int startLevel = -1;
+    private int startCounter;
+    private int edgeLevel;
+    private int edgeCounter;
+
+    //The counter is only needed on a level change, so it is not read on every update
+    public synchronized boolean isCounterNeeded(int level, boolean charging) {
+        return charging && lastLevel >= 0 && level > lastLevel;
+    }
+
+    //chargeCounter is in µAh, and only read when isCounterNeeded(). Returns true if the state changed
+    public synchronized boolean update(int level, boolean charging, int chargeCounter) {
+        if (!charging || level < 0) {
+            boolean isChanged = startLevel >= 0 && observe(edgeLevel - startLevel, edgeCounter - startCounter);
+
+            lastLevel = -1;
+            startLevel = -1;
+
+            return isChanged;
+        } else if (lastLevel < 0 || level < lastLevel) {
+            //This level was entered before it was seen, so the session starts at the next change
+            lastLevel = level;
+            startLevel = -1;
+        } else if (level > lastLevel) {
+            if (chargeCounter <= 0 || (startLevel >= 0 && chargeCounter <= edgeCounter)) {
+                //Unsupported, or the counter was reset
+                startLevel = -1;
+            } else {
+                if (startLevel < 0) {
+                    startLevel = level;
+                    startCounter = chargeCounter;
+                }
+
+                edgeLevel = level;
+                edgeCounter = chargeCounter;
+            }
+
+            lastLevel = level;
+        }
+
+        return false;
+    }
+
+    private boolean observe(int span, int charge) {
+        if (span < MIN_SPAN) {
+            return false;
+        }
+
+        double observed = charge / 1000. * 100 / span;
+
+        if (observed < MIN_CAPACITY || observed > MAX_CAPACITY) {
+            rejected = increment(rejected, REJECTED_BITS);
+
+            return true;
+        }
+
+        if (sessions >= WARMUP &&
+                Math.abs(observed - capacity) > REJECTION_LIMIT * Math.max(deviation, MIN_DEVIATION * capacity) &&
+                ++consecutiveRejections < MAX_REJECTIONS) {
+            rejected = increment(rejected, REJECTED_BITS);
+
+            return true;
+        }
+
+        double sessionWeight = span / 100.;
+
+        weight = Math.min(weight + sessionWeight, MAX_WEIGHT);
+        consecutiveRejections = 0;
+        sessions = increment(sessions, SESSION_BITS);
+
+        double gain = sessionWeight / weight;
+
+        capacity += gain * (observed - capacity);
+        deviation += gain * (Math.abs(observed - capacity) - deviation);
+
+        return true;
+    }
+
+    //mAh, or UNKNOWN until enough sessions were measured
+    public synchronized int getCapacity() {
+        return sessions < WARMUP ? UNKNOWN : (int) Math.round(capacity);
+    }
+
+    public synchronized int getDeviation() {
+        return (int) Math.round(deviation);
+    }
+
+    public synchronized int getSessions() {
+        return sessions;
+    }
+
+    public synchronized int getRejected() {
+        return rejected;
+    }
+
+    private static int increment(int count, int bits) {
+        return Math.min(count + 1, (1 << bits) - 1);
+    }
+
+    public synchronized long getEstimate() {
+        return ((long) Float.floatToIntBits((float) capacity) << 32) | (Float.floatToIntBits((float) deviation) & 0xFFFFFFFFL);
+    }
+
+    //The weight, then the session, rejected and consecutive rejection counts, so the rejection rule
+    //keeps counting across monitor restarts
+    public synchronized long getFit() {
+        return ((long) Float.floatToIntBits((float) weight) << 32) |
+                ((long) sessions << (REJECTED_BITS + CONSECUTIVE_BITS)) |
+                ((long) rejected << CONSECUTIVE_BITS) |
+                consecutiveRejections;
+    }
+
+    public synchronized boolean isSessionOpen() {
+        return lastLevel >= 0;
+    }
+
+    //The last level seen while charging, then the start and edge levels. The counters are in getSessionCounters()
+    public synchronized long getSession() {
+        return lastLevel < 0 ? NO_SESSION :
+                (lastLevel + 1) |
+                        (startLevel + 1) << 8 |
+                        edgeLevel << 16;
+    }
+
+    public synchronized long getSessionCounters() {
+        return ((long) startCounter << 32) | (edgeCounter & 0xFFFFFFFFL);
+    }
+
+    public synchronized void setSession(long session, long counters) {
+        lastLevel = (int) (session & 0xFF) - 1;
+        startLevel = (int) (session >> 8 & 0xFF) - 1;
+        edgeLevel = (int) (session >> 16 & 0xFF);
+        startCounter = (int) (counters >>> 32);
+        edgeCounter = (int) counters;
+    }
+
+    public synchronized void setState(long estimate, long fit) {
+        capacity = Float.intBitsToFloat((int) (estimate >>> 32));
+        deviation = Float.intBitsToFloat((int) estimate);
+        weight = Float.intBitsToFloat((int) (fit >>> 32));
+        sessions = (int) (fit >>> (REJECTED_BITS + CONSECUTIVE_BITS)) & ((1 << SESSION_BITS) - 1);
+        rejected = (int) (fit >>> CONSECUTIVE_BITS) & ((1 << REJECTED_BITS) - 1);
+        consecutiveRejections = (int) fit & ((1 << CONSECUTIVE_BITS) - 1);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.charge;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.Build;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleSink;
+import com.ominous.batterynotification.bus.BatterySnapshotStore;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
+import com.ominous.batterynotification.util.BatterySample;
+
+//Always on while charging, since the estimate needs many charges. Updates are delivered inline, as the
+//charge counter is only read on a level change while charging. The estimate is stored after a session,
+//and the open session on each level change, as the monitor is often killed during a charge
+public class CapacitySink implements BatterySampleSink {
+    private static CapacityEstimator capacityEstimator;
+    private static int designCapacity = -1;
+
+    public static synchronized CapacityEstimator getCapacityEstimator(Context context) {
+        if (capacityEstimator == null) {
+            SharedPreferences monitorState = MonitorPreferences.getMonitorState(context);
+
+            capacityEstimator = readCapacityEstimator(context, monitorState);
+
+            //The charge counter may start over on a reboot
+            if (MonitorPreferences.isSameBoot(context)) {
+                capacityEstimator.setSession(
+                        monitorState.getLong(context.getString(R.string.preference_capacity_session), CapacityEstimator.NO_SESSION),
+                        monitorState.getLong(context.getString(R.string.preference_capacity_session_counters), 0));
+            }
+        }
+
+        return capacityEstimator;
+    }
+
+    //For processes other than the monitor, which pass their own view of the monitor state
+    public static CapacityEstimator readCapacityEstimator(Context context, SharedPreferences monitorState) {
+        CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+        capacityEstimator.setState(
+                monitorState.getLong(context.getString(R.string.preference_capacity_estimate), CapacityEstimator.NO_STATE),
+                monitorState.getLong(context.getString(R.string.preference_capacity_fit), CapacityEstimator.NO_STATE));
+
+        return capacityEstimator;
+    }
+
+    //mAh as rated by the manufacturer, or 0 if the device does not say. Only the monitor may call this,
+    //as the hidden API is only unsealed there. It is stored for the UI along with the estimate
+    @SuppressLint("PrivateApi")
+    public static synchronized int getDesignCapacity(Context context) {
+        if (designCapacity < 0) {
+            designCapacity = 0;
+
+            try {
+                //double capacity = new PowerProfile(context).getBatteryCapacity();
+                Class<?> powerProfile = Class.forName("com.android.internal.os.PowerProfile");
+                Double capacity = (Double) powerProfile
+                        .getMethod("getBatteryCapacity")
+                        .invoke(powerProfile.getConstructor(Context.class).newInstance(context));
+
+                //The default profile reports 1000
+                if (capacity != null && capacity > 1000) {
+                    designCapacity = (int) Math.round(capacity);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        return designCapacity;
+    }
+
+    //For processes other than the monitor, 0 until the monitor has stored an estimate
+    public static int readDesignCapacity(Context context, SharedPreferences monitorState) {
+        return monitorState.getInt(context.getString(R.string.preference_design_capacity), 0);
+    }
+
+    public static int getHealth(Context context, int capacity) {
+        return getHealth(capacity, getDesignCapacity(context));
+    }
+
+    //Percent of the design capacity, or CapacityEstimator.UNKNOWN
+    public static int getHealth(int capacity, int designCapacity) {
+        return capacity == CapacityEstimator.UNKNOWN || designCapacity == 0 ?
+                CapacityEstimator.UNKNOWN :
+                capacity * 100 / designCapacity;
+    }
+
+    //Off the charger nothing is measured, except the sample that closes the session
+    @Override
+    public int getFields(Context context) {
+        return Build.VERSION.SDK_INT >= 21 && (!BatterySnapshotStore.isUnplugged() || getCapacityEstimator(context).isSessionOpen()) ?
+                BatterySample.FIELD_LEVEL | BatterySample.FIELD_STATUS :
+                0;
+    }
+
+    @Override
+    public void onSample(Context context, BatterySample sample) {
+        if (Build.VERSION.SDK_INT >= 21) {
+            CapacityEstimator capacityEstimator = getCapacityEstimator(context);
+            boolean isCharging = sample.isCharging();
+            int chargeCounter = 0;
+
+            if (capacityEstimator.isCounterNeeded(sample.level, isCharging)) {
+                BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+
+                chargeCounter = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+            }
+
+            long session = capacityEstimator.getSession(), counters = capacityEstimator.getSessionCounters();
+            boolean isStateChanged = capacityEstimator.update(sample.level, isCharging, chargeCounter);
+            boolean isSessionChanged = capacityEstimator.getSession() != session || capacityEstimator.getSessionCounters() != counters;
+
+            if (isStateChanged || isSessionChanged) {
+                SharedPreferences.Editor editor = MonitorPreferences.getMonitorState(context).edit()
+                        .putLong(context.getString(R.string.preference_capacity_session), capacityEstimator.getSession())
+                        .putLong(context.getString(R.string.preference_capacity_session_counters), capacityEstimator.getSessionCounters());
+
+                if (isStateChanged) {
+                    editor.putLong(context.getString(R.string.preference_capacity_estimate), capacityEstimator.getEstimate())
+                            .putLong(context.getString(R.string.preference_capacity_fit), capacityEstimator.getFit())
+                            .putInt(context.getString(R.string.preference_design_capacity), getDesignCapacity(context));
+                }
+
+                editor.apply();
+            }
+        }
+    }
+}
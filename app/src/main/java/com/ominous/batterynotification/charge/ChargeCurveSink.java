@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.charge;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleSink;
+import com.ominous.batterynotification.bus.BatterySnapshotStore;
+import com.ominous.batterynotification.history.HistorySink;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
+import com.ominous.batterynotification.util.BatterySample;
+import com.ominous.batterynotification.util.StorageUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.Nullable;
+
+//Learns the charge curves while the time remaining is shown. Each curve is stored in place as soon
+//as it changes, so the file stays a fixed size and a write never touches the other curves. The open
+//session is stored in the monitor state, since the monitor rarely lives through a whole charge. Both
+//are only loaded on the history thread, until then the time to full is unknown
+public class ChargeCurveSink implements BatterySampleSink, SharedPreferences.OnSharedPreferenceChangeListener {
+    private final static String CHARGE_CURVES_FILENAME = "charge_curves";
+    private final static long FILE_SIZE = (long) ChargeCurves.CURVES * ChargeCurves.CURVE_BYTES;
+    private static volatile ChargeCurves chargeCurves;
+    private final Context context;
+    private volatile boolean isEnabled;
+
+    public ChargeCurveSink(Context context) {
+        this.context = context.getApplicationContext();
+
+        onSharedPreferenceChanged(StorageUtils.getPreferences(context), null);
+        MonitorPreferences.registerListener(this);
+
+        if (isEnabled) {
+            HistorySink.getHistoryExecutor().execute(() -> getChargeCurves(this.context));
+        }
+    }
+
+    //Reads the file the first time, so only call this off the update path
+    public static synchronized ChargeCurves getChargeCurves(Context context) {
+        if (chargeCurves == null) {
+            ChargeCurves newChargeCurves = new ChargeCurves();
+            File file = getFile(context);
+
+            if (file.length() == FILE_SIZE) {
+                try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    newChargeCurves.read(input);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            SharedPreferences monitorState = MonitorPreferences.getMonitorState(context);
+            long levelEnteredAt = monitorState.getLong(context.getString(R.string.preference_charge_session_time), 0);
+
+            if (MonitorPreferences.isSameBoot(context) && levelEnteredAt <= SystemClock.elapsedRealtime()) {
+                newChargeCurves.setSession(
+                        monitorState.getLong(context.getString(R.string.preference_charge_session), ChargeCurves.NO_SESSION),
+                        levelEnteredAt);
+            }
+
+            chargeCurves = newChargeCurves;
+        }
+
+        return chargeCurves;
+    }
+
+    //Null until the history thread has loaded them
+    @Nullable
+    public static ChargeCurves peekChargeCurves() {
+        return chargeCurves;
+    }
+
+    private static File getFile(Context context) {
+        return new File(StorageUtils.getFilesDir(context), CHARGE_CURVES_FILENAME);
+    }
+
+    private static void store(Context context, ChargeCurves chargeCurves, int curve) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(getFile(context), "rw")) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(ChargeCurves.CURVE_BYTES);
+            DataOutputStream output = new DataOutputStream(bytes);
+
+            if (file.length() == FILE_SIZE) {
+                chargeCurves.writeCurve(curve, output);
+                file.seek((long) curve * ChargeCurves.CURVE_BYTES);
+            } else {
+                for (int i = 0; i < ChargeCurves.CURVES; i++) {
+                    chargeCurves.writeCurve(i, output);
+                }
+
+                file.setLength(FILE_SIZE);
+            }
+
+            file.write(bytes.toByteArray());
+        }
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        isEnabled = sharedPreferences.getBoolean(context.getString(R.string.preference_time_remaining), false);
+    }
+
+    //The current only picks the curve, so it is not read off the charger
+    @Override
+    public int getFields(Context context) {
+        return isEnabled ?
+                BatterySample.FIELD_LEVEL | BatterySample.FIELD_STATUS | BatterySample.FIELD_PLUGGED |
+                        (Build.VERSION.SDK_INT >= 21 && !BatterySnapshotStore.isUnplugged() ? BatterySample.FIELD_AMPERAGE : 0) :
+                0;
+    }
+
+    //Shares the history thread, so file access stays off the update path
+    @Nullable
+    @Override
+    public Executor getExecutor() {
+        return HistorySink.getHistoryExecutor();
+    }
+
+    @Override
+    public void onSample(Context context, BatterySample sample) {
+        if (isEnabled) {
+            ChargeCurves chargeCurves = getChargeCurves(context);
+            long session = chargeCurves.getSession(), levelEnteredAt = chargeCurves.getLevelEnteredAt();
+            int curve = chargeCurves.update(sample.elapsedRealtime, sample.level, sample.isCharging(), sample.plugged, sample.amperage);
+
+            if (curve >= 0) {
+                try {
+                    store(context, chargeCurves, curve);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            if (chargeCurves.getSession() != session || chargeCurves.getLevelEnteredAt() != levelEnteredAt) {
+                MonitorPreferences.getMonitorState(context).edit()
+                        .putLong(context.getString(R.string.preference_charge_session), chargeCurves.getSession())
+                        .putLong(context.getString(R.string.preference_charge_session_time), chargeCurves.getLevelEnteredAt())
+                        .apply();
+            }
+        }
+    }
+}
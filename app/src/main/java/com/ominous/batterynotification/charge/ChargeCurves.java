@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.charge;
+
+import android.os.BatteryManager;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+//Learns how long each level takes to charge, with one curve per charger type and current class,
+//since fast chargers spend most of their time tapering above 80%. Levels that have not been seen
+//yet are interpolated from their neighbors. The remaining time from every level is precomputed
+//whenever a curve changes, so a lookup is constant time
+public class ChargeCurves {
+    public final static int LEVELS = 100;
+    public final static int PLUG_TYPES = 4, CURRENT_CLASSES = 4, CURVES = PLUG_TYPES * CURRENT_CLASSES;
+    public final static int CURVE_BYTES = LEVELS * 2;
+    public final static long UNKNOWN = -1;
+    public final static long NO_SESSION = 0;
+    private final static int[] CURRENT_CLASS_LIMITS = {1000000, 2000000, 3500000};
+    private final static double SMOOTHING = 0.3;
+    //Anything slower than this is a stall or a missed update, not the charge rate
+    private final static long MAX_LEVEL_DURATION = 3 * 60 * 60 * 1000;
+
+    //Seconds to go from each level to the next, 0 if never measured
+    private final char[] durations = new char[CURVES * LEVELS];
+    //Seconds to go from each level to full, including interpolated levels
+    private final int[] remaining = new int[CURVES * (LEVELS + 1)];
+    private final int[] measuredLevels = new int[CURVES];
+    private long lookups, unknownLookups;
+
+    private int sessionPlugType = -1;
+    private int sessionCurrentClass;
+    private int lastLevel;
+    private long levelEnteredAt;
+    private boolean isLevelEntryObserved;
+
+    //Returns the curve that changed and needs to be stored, or -1
+    public synchronized int update(long now, int level, boolean charging, int plugged, int current) {
+        if (!charging || level < 0 || level > LEVELS) {
+            sessionPlugType = -1;
+
+            return -1;
+        }
+
+        int plugType = getPlugType(plugged);
+        int currentClass = getCurrentClass(current);
+
+        if (plugType != sessionPlugType || level < lastLevel || currentClass > sessionCurrentClass) {
+            //A new session, or the charger turned out to be faster than it looked so far
+            if (plugType == sessionPlugType && level >= lastLevel) {
+                sessionCurrentClass = Math.max(sessionCurrentClass, currentClass);
+            } else {
+                sessionCurrentClass = currentClass;
+            }
+
+            sessionPlugType = plugType;
+            lastLevel = level;
+            levelEnteredAt = now;
+            isLevelEntryObserved = false;
+
+            return -1;
+        } else if (level > lastLevel) {
+            int curve = -1;
+
+            if (isLevelEntryObserved) {
+                //Updates can skip levels, so the time is spread over every level passed
+                long levelDuration = (now - levelEnteredAt) / (level - lastLevel);
+
+                if (levelDuration > 0 && levelDuration <= MAX_LEVEL_DURATION) {
+                    curve = getCurve(sessionPlugType, sessionCurrentClass);
+
+                    for (int i = lastLevel; i < level && i < LEVELS; i++) {
+                        learn(curve, i, levelDuration / 1000.);
+                    }
+
+                    rebuild(curve);
+                }
+            }
+
+            lastLevel = level;
+            levelEnteredAt = now;
+            isLevelEntryObserved = true;
+
+            return curve;
+        } else {
+            return -1;
+        }
+    }
+
+    //Milliseconds until full, or UNKNOWN if nothing has been learned for this charger yet
+    public synchronized long getTimeToFull(long now, int level, int plugged) {
+        lookups++;
+
+        if (level >= LEVELS) {
+            return 0;
+        } else if (level < 0) {
+            unknownLookups++;
+
+            return UNKNOWN;
+        }
+
+        int plugType = getPlugType(plugged);
+        int curve = plugType == sessionPlugType ? getCurve(plugType, sessionCurrentClass) : -1;
+
+        if (curve < 0 || measuredLevels[curve] == 0) {
+            curve = getMostMeasuredCurve(plugType);
+
+            if (curve < 0) {
+                unknownLookups++;
+
+                return UNKNOWN;
+            }
+        }
+
+        int offset = curve * (LEVELS + 1);
+        long levelTime = (remaining[offset + level] - remaining[offset + level + 1]) * 1000L;
+
+        //Part of the current level has already been charged
+        if (plugType == sessionPlugType && level == lastLevel && isLevelEntryObserved) {
+            levelTime = Math.max(0, levelTime - (now - levelEnteredAt));
+        }
+
+        return remaining[offset + level + 1] * 1000L + levelTime;
+    }
+
+    //The open session packed into a long, so it can be stored while the monitor is dead. The time the
+    //current level was entered is kept apart, as it is only meaningful within one boot
+    public synchronized long getSession() {
+        return sessionPlugType < 0 ? NO_SESSION :
+                (sessionPlugType + 1) |
+                        sessionCurrentClass << 4 |
+                        lastLevel << 8 |
+                        (isLevelEntryObserved ? 1 << 16 : 0);
+    }
+
+    public synchronized long getLevelEnteredAt() {
+        return levelEnteredAt;
+    }
+
+    public synchronized void setSession(long session, long levelEnteredAt) {
+        if (session == NO_SESSION) {
+            sessionPlugType = -1;
+        } else {
+            sessionPlugType = (int) (session & 0xF) - 1;
+            sessionCurrentClass = (int) (session >> 4 & 0xF);
+            lastLevel = (int) (session >> 8 & 0xFF);
+            isLevelEntryObserved = (session >> 16 & 1) != 0;
+            this.levelEnteredAt = levelEnteredAt;
+        }
+    }
+
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    public synchronized long getUnknownLookups() {
+        return unknownLookups;
+    }
+
+    public synchronized void read(DataInput input) throws IOException {
+        for (int curve = 0; curve < CURVES; curve++) {
+            for (int i = 0; i < LEVELS; i++) {
+                durations[curve * LEVELS + i] = input.readChar();
+            }
+
+            rebuild(curve);
+        }
+    }
+
+    public synchronized void writeCurve(int curve, DataOutput output) throws IOException {
+        for (int i = 0; i < LEVELS; i++) {
+            output.writeChar(durations[curve * LEVELS + i]);
+        }
+    }
+
+    private void learn(int curve, int level, double seconds) {
+        int index = curve * LEVELS + level;
+        double duration = durations[index] == 0 ? seconds : durations[index] + SMOOTHING * (seconds - durations[index]);
+
+        durations[index] = (char) Math.max(1, Math.min(Character.MAX_VALUE, Math.round(duration)));
+    }
+
+    private void rebuild(int curve) {
+        int start = curve * LEVELS;
+        int offset = curve * (LEVELS + 1);
+        int above = -1, below = LEVELS;
+        int measured = 0;
+
+        //Walks down from full, interpolating each unmeasured level between the measured levels around it
+        remaining[offset + LEVELS] = 0;
+
+        for (int i = LEVELS - 1; i >= 0; i--) {
+            int duration = durations[start + i];
+
+            if (duration != 0) {
+                above = i;
+                measured++;
+            } else {
+                if (below >= i) {
+                    below = -1;
+
+                    for (int j = i - 1; j >= 0 && below < 0; j--) {
+                        if (durations[start + j] != 0) {
+                            below = j;
+                        }
+                    }
+                }
+
+                if (above < 0 && below < 0) {
+                    duration = 0;
+                } else if (above < 0) {
+                    duration = durations[start + below];
+                } else if (below < 0) {
+                    duration = durations[start + above];
+                } else {
+                    duration = durations[start + below] +
+                            (durations[start + above] - durations[start + below]) * (i - below) / (above - below);
+                }
+            }
+
+            remaining[offset + i] = remaining[offset + i + 1] + duration;
+        }
+
+        measuredLevels[curve] = measured;
+    }
+
+    private int getMostMeasuredCurve(int plugType) {
+        int best = -1;
+
+        for (int currentClass = 0; currentClass < CURRENT_CLASSES; currentClass++) {
+            int curve = getCurve(plugType, currentClass);
+
+            if (measuredLevels[curve] > 0 && (best < 0 || measuredLevels[curve] > measuredLevels[best])) {
+                best = curve;
+            }
+        }
+
+        return best;
+    }
+
+    private static int getCurve(int plugType, int currentClass) {
+        return plugType * CURRENT_CLASSES + currentClass;
+    }
+
+    private static int getPlugType(int plugged) {
+        return switch (plugged) {
+            case BatteryManager.BATTERY_PLUGGED_AC -> 0;
+            case BatteryManager.BATTERY_PLUGGED_USB -> 1;
+            case BatteryManager.BATTERY_PLUGGED_WIRELESS -> 2;
+            default -> 3;
+        };
+    }
+
+    //Current is in microamps, and its sign depends on the device
+    private static int getCurrentClass(int current) {
+        int magnitude = Math.abs(current);
+        int currentClass = 0;
+
+        while (currentClass < CURRENT_CLASS_LIMITS.length && magnitude >= CURRENT_CLASS_LIMITS[currentClass]) {
+            currentClass++;
+        }
+
+        return currentClass;
+    }
+}
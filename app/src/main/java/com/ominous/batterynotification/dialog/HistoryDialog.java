@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.dialog;
+
+import android.content.Context;
+import android.view.ViewGroup;
+import android.widget.Button;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.view.HistoryChartView;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.core.content.ContextCompat;
+
+public class HistoryDialog {
+    private final AlertDialog dialog;
+
+    public HistoryDialog(Context context) {
+        HistoryChartView chartView = new HistoryChartView(context);
+
+        int padding = context.getResources().getDimensionPixelSize(R.dimen.margin_standard);
+        chartView.setPadding(padding * 3 / 2, padding, padding * 3 / 2, padding);
+        chartView.setLayoutParams(new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                context.getResources().getDimensionPixelSize(R.dimen.history_chart_height)));
+
+        dialog = new AlertDialog.Builder(context)
+                .setTitle(context.getString(R.string.preference_history_chart_desc))
+                .setView(chartView)
+                .setPositiveButton(context.getString(R.string.dialog_button_close), null)
+                .create();
+
+        dialog.setOnShowListener(d -> {
+            Button button = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
+
+            if (button != null) {
+                button.setTextColor(ContextCompat.getColor(context, R.color.colorPrimary));
+            }
+        });
+    }
+
+    public void show() {
+        dialog.show();
+    }
+}
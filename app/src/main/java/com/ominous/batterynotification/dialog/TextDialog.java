@@ -22,6 +22,7 @@ package com.ominous.batterynotification.dialog;
 import android.content.Context;
 import android.text.SpannableString;
 import android.widget.Button;
+import android.widget.ScrollView;
 import android.widget.TextView;
 
 import com.ominous.batterynotification.R;
@@ -40,8 +41,11 @@ public class TextDialog {
         int padding = context.getResources().getDimensionPixelSize(R.dimen.margin_standard);
         textView.setPadding(padding * 3 / 2, padding, padding * 3 / 2, padding);
 
+        ScrollView scrollView = new ScrollView(context);
+        scrollView.addView(textView);
+
         dialog = new AlertDialog.Builder(context)
-                .setView(textView)
+                .setView(scrollView)
                 .create();
 
         dialog.setOnShowListener(d -> {
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.history;
+
+//Min/max per pixel column. Columns are aligned to multiples of columnDuration since the epoch, so a
+//series can be panned by sliding a window over it instead of decimating again. Empty columns are NaN
+public class DecimatedSeries {
+    public final long columnDuration;
+    public final long firstColumn;
+    public final int columns;
+    public final float[] levelMin, levelMax;
+    public final float[] temperatureMin, temperatureMax;
+    public final float[] currentMin, currentMax;
+
+    private DecimatedSeries(long columnDuration, long firstColumn, int columns) {
+        this.columnDuration = columnDuration;
+        this.firstColumn = firstColumn;
+        this.columns = columns;
+
+        levelMin = newColumns(columns);
+        levelMax = newColumns(columns);
+        temperatureMin = newColumns(columns);
+        temperatureMax = newColumns(columns);
+        currentMin = newColumns(columns);
+        currentMax = newColumns(columns);
+    }
+
+    public static DecimatedSeries decimate(HistorySeries series, long from, long to, long columnDuration) {
+        long firstColumn = from / columnDuration;
+        int columns = (int) (to / columnDuration - firstColumn + 1);
+        DecimatedSeries result = new DecimatedSeries(columnDuration, firstColumn, columns);
+
+        for (HistoryBucket bucket : series.buckets) {
+            //A coarse bucket can cover several columns
+            int first = (int) Math.max(bucket.start / columnDuration - firstColumn, 0);
+            int last = (int) Math.min((bucket.start + Math.max(series.bucketDuration - 1, 0)) / columnDuration - firstColumn, columns - 1);
+
+            for (int column = first; column <= last; column++) {
+                result.add(column, bucket);
+            }
+        }
+
+        return result;
+    }
+
+    public long getLastColumn() {
+        return firstColumn + columns - 1;
+    }
+
+    private void add(int column, HistoryBucket bucket) {
+        if (Float.isNaN(levelMin[column])) {
+            levelMin[column] = bucket.levelMin;
+            levelMax[column] = bucket.levelMax;
+            temperatureMin[column] = bucket.temperatureMin;
+            temperatureMax[column] = bucket.temperatureMax;
+            currentMin[column] = bucket.currentMin;
+            currentMax[column] = bucket.currentMax;
+        } else {
+            levelMin[column] = Math.min(levelMin[column], bucket.levelMin);
+            levelMax[column] = Math.max(levelMax[column], bucket.levelMax);
+            temperatureMin[column] = Math.min(temperatureMin[column], bucket.temperatureMin);
+            temperatureMax[column] = Math.max(temperatureMax[column], bucket.temperatureMax);
+            currentMin[column] = Math.min(currentMin[column], bucket.currentMin);
+            currentMax[column] = Math.max(currentMax[column], bucket.currentMax);
+        }
+    }
+
+    private static float[] newColumns(int columns) {
+        float[] values = new float[columns];
+
+        for (int i = 0; i < columns; i++) {
+            values[i] = Float.NaN;
+        }
+
+        return values;
+    }
+}
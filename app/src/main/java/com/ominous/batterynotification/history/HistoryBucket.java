@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+//Summary of every sample that falls in [start, start + duration). A raw sample is a bucket of one
+public class HistoryBucket {
+    final static int RECORD_SIZE = 42;
+
+    public long start;
+    public int count;
+    public int chargingMillis;
+    public int levelMin, levelMax;
+    public float levelMean;
+    public int temperatureMin, temperatureMax;
+    public float temperatureMean;
+    public int currentMin, currentMax;
+    public float currentMean;
+
+    void set(long time, int level, int temperature, int current, int chargingMillis) {
+        this.start = time;
+        this.count = 1;
+        this.chargingMillis = chargingMillis;
+        this.levelMin = this.levelMax = level;
+        this.levelMean = level;
+        this.temperatureMin = this.temperatureMax = temperature;
+        this.temperatureMean = temperature;
+        this.currentMin = this.currentMax = current;
+        this.currentMean = current;
+    }
+
+    void set(HistoryBucket bucket) {
+        this.start = bucket.start;
+        this.count = bucket.count;
+        this.chargingMillis = bucket.chargingMillis;
+        this.levelMin = bucket.levelMin;
+        this.levelMax = bucket.levelMax;
+        this.levelMean = bucket.levelMean;
+        this.temperatureMin = bucket.temperatureMin;
+        this.temperatureMax = bucket.temperatureMax;
+        this.temperatureMean = bucket.temperatureMean;
+        this.currentMin = bucket.currentMin;
+        this.currentMax = bucket.currentMax;
+        this.currentMean = bucket.currentMean;
+    }
+
+    //Folds another bucket into this one, weighting the means by sample count
+    void merge(HistoryBucket bucket) {
+        int total = count + bucket.count;
+
+        levelMin = Math.min(levelMin, bucket.levelMin);
+        levelMax = Math.max(levelMax, bucket.levelMax);
+        levelMean = (levelMean * count + bucket.levelMean * bucket.count) / total;
+        temperatureMin = Math.min(temperatureMin, bucket.temperatureMin);
+        temperatureMax = Math.max(temperatureMax, bucket.temperatureMax);
+        temperatureMean = (temperatureMean * count + bucket.temperatureMean * bucket.count) / total;
+        currentMin = Math.min(currentMin, bucket.currentMin);
+        currentMax = Math.max(currentMax, bucket.currentMax);
+        currentMean = (currentMean * count + bucket.currentMean * bucket.count) / total;
+        chargingMillis += bucket.chargingMillis;
+        count = total;
+    }
+
+    void write(DataOutput output) throws IOException {
+        output.writeLong(start);
+        output.writeInt(count);
+        output.writeInt(chargingMillis);
+        output.writeFloat(levelMean);
+        output.writeFloat(temperatureMean);
+        output.writeFloat(currentMean);
+        output.writeInt(currentMin);
+        output.writeInt(currentMax);
+        output.writeShort(temperatureMin);
+        output.writeShort(temperatureMax);
+        output.writeByte(levelMin);
+        output.writeByte(levelMax);
+    }
+
+    void read(DataInput input) throws IOException {
+        start = input.readLong();
+        count = input.readInt();
+        chargingMillis = input.readInt();
+        levelMean = input.readFloat();
+        temperatureMean = input.readFloat();
+        currentMean = input.readFloat();
+        currentMin = input.readInt();
+        currentMax = input.readInt();
+        temperatureMin = input.readShort();
+        temperatureMax = input.readShort();
+        levelMin = input.readByte();
+        levelMax = input.readByte();
+    }
+}
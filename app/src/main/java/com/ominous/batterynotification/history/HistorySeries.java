@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.history;
+
+import java.util.ArrayList;
+
+public class HistorySeries {
+    public final long bucketDuration;
+    public final HistoryBucket[] buckets;
+
+    private HistorySeries(long bucketDuration, HistoryBucket[] buckets) {
+        this.bucketDuration = bucketDuration;
+        this.buckets = buckets;
+    }
+
+    static class Builder {
+        private final ArrayList<HistoryBucket> buckets = new ArrayList<>();
+        private final long bucketDuration;
+
+        Builder(long bucketDuration) {
+            this.bucketDuration = bucketDuration;
+        }
+
+        void add(HistoryBucket bucket) {
+            buckets.add(bucket);
+        }
+
+        HistorySeries build() {
+            return new HistorySeries(bucketDuration, buckets.toArray(new HistoryBucket[0]));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.history;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleSink;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
+import com.ominous.batterynotification.util.BatterySample;
+import com.ominous.batterynotification.util.StorageUtils;
+import com.ominous.batterynotification.work.UpdatePolicy;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.Nullable;
+
+public class HistorySink implements BatterySampleSink, SharedPreferences.OnSharedPreferenceChangeListener {
+    private final static long COMPACTION_INTERVAL = 60 * UpdatePolicy.ONE_MIN;
+    //File access is serialized on one thread so the update path never waits on storage
+    private final static ExecutorService historyExecutor = Executors.newSingleThreadExecutor();
+    private static HistoryStore historyStore, historyReader;
+    private static volatile long lastCompaction = 0;
+    private final Context context;
+    private volatile boolean isEnabled;
+
+    public HistorySink(Context context) {
+        this.context = context.getApplicationContext();
+
+        SharedPreferences sharedPreferences = StorageUtils.getPreferences(context);
+
+        onSharedPreferenceChanged(sharedPreferences, null);
+        MonitorPreferences.registerListener(this);
+    }
+
+    public static synchronized HistoryStore getHistoryStore(Context context) {
+        if (historyStore == null) {
+            historyStore = new HistoryStore(StorageUtils.getHistoryDirectory(context));
+        }
+
+        return historyStore;
+    }
+
+    //For the UI process, and readers in the monitor that should not wait on the history thread.
+    //Only the history thread writes
+    public static synchronized HistoryStore getHistoryReader(Context context) {
+        if (historyReader == null) {
+            historyReader = new HistoryStore(StorageUtils.getHistoryDirectory(context), true);
+        }
+
+        return historyReader;
+    }
+
+    public static Executor getHistoryExecutor() {
+        return historyExecutor;
+    }
+
+    //Called from the update alarm, so compaction piggybacks on a wakeup that is already happening
+    public static void compactIfDue(Context context) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (lastCompaction == 0 || now - lastCompaction >= COMPACTION_INTERVAL) {
+            lastCompaction = now;
+
+            HistoryStore store = getHistoryStore(context);
+
+            historyExecutor.execute(() -> {
+                try {
+                    store.compact(System.currentTimeMillis());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        isEnabled = sharedPreferences.getBoolean(context.getString(R.string.preference_history), false);
+    }
+
+    @Override
+    public int getFields(Context context) {
+        return isEnabled ?
+                BatterySample.FIELD_LEVEL | BatterySample.FIELD_TEMPERATURE | BatterySample.FIELD_STATUS |
+                        (Build.VERSION.SDK_INT >= 21 ? BatterySample.FIELD_AMPERAGE : 0) :
+                0;
+    }
+
+    @Nullable
+    @Override
+    public Executor getExecutor() {
+        return historyExecutor;
+    }
+
+    @Override
+    public void onSample(Context context, BatterySample sample) {
+        if (isEnabled) {
+            //Wall clock time, so history survives reboots
+            long time = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - sample.elapsedRealtime);
+
+            try {
+                getHistoryStore(context).add(time,
+                        sample.level,
+                        sample.temperature,
+                        sample.has(BatterySample.FIELD_AMPERAGE) ? sample.amperage : 0,
+                        sample.isCharging());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+
+//Raw samples for the last day, rolled up into 5 minute and hourly buckets for the long term.
+//Every record starts with its timestamp and files are sorted by it, so ranges can be found by bisection
+public class HistoryStore {
+    public final static long MINUTE = 60 * 1000;
+    public final static long HOUR = 60 * MINUTE;
+    public final static long DAY = 24 * HOUR;
+    final static long RAW_RETENTION = DAY;
+    private final static long FIVE_MINUTE_RETENTION = 30 * DAY;
+    private final static long HOURLY_RETENTION = 2 * 365 * DAY;
+    private final static long MIN_RAW_INTERVAL = MINUTE / 2;
+    //Longer gaps mean the device was off or the process was dead, so the charger state is unknown
+    private final static long MAX_CHARGING_GAP = 10 * MINUTE;
+    private final static int RAW_RECORD_SIZE = 16;
+
+    private final File rawFile;
+    private final RollupTier fiveMinuteTier;
+    private final RollupTier hourlyTier;
+    private final HistoryBucket rawBucket = new HistoryBucket();
+    private final boolean isReadOnly;
+    private boolean isLoaded = false;
+    private long lastRawTime = -1;
+    private boolean lastRawCharging = false;
+
+    public HistoryStore(File directory) {
+        this(directory, false);
+    }
+
+    //A read-only store only sees closed buckets, the open ones live in the process that writes
+    public HistoryStore(File directory, boolean isReadOnly) {
+        this.isReadOnly = isReadOnly;
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+
+        rawFile = new File(directory, "raw.bin");
+        fiveMinuteTier = new RollupTier(new File(directory, "5min.bin"), 5 * MINUTE, FIVE_MINUTE_RETENTION);
+        hourlyTier = new RollupTier(new File(directory, "hourly.bin"), HOUR, HOURLY_RETENTION);
+    }
+
+    public synchronized void add(long time, int level, int temperature, int current, boolean charging) throws IOException {
+        checkWritable();
+        load();
+
+        if (time <= lastRawTime || (time - lastRawTime < MIN_RAW_INTERVAL && charging == lastRawCharging)) {
+            return;
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(rawFile, true)))) {
+            writeRaw(output, time, level, temperature, current, charging);
+        }
+
+        accumulate(time, level, temperature, current, charging);
+    }
+
+    //Drops whatever each tier no longer needs to keep. Open buckets only live in memory, so this never loses data
+    public synchronized void compact(long now) throws IOException {
+        checkWritable();
+        load();
+
+        trim(rawFile, RAW_RECORD_SIZE, now - RAW_RETENTION);
+        trim(fiveMinuteTier.file, HistoryBucket.RECORD_SIZE, now - fiveMinuteTier.retention);
+        trim(hourlyTier.file, HistoryBucket.RECORD_SIZE, now - hourlyTier.retention);
+    }
+
+    //Reads from the coarsest tier that still has at least minBuckets across the range and keeps data that old
+    public synchronized HistorySeries query(long from, long to, int minBuckets, long now) throws IOException {
+        load();
+
+        RollupTier tier;
+
+        if ((to - from) / hourlyTier.bucketDuration >= minBuckets || from < now - fiveMinuteTier.retention) {
+            tier = hourlyTier;
+        } else if ((to - from) / fiveMinuteTier.bucketDuration >= minBuckets || from < now - RAW_RETENTION) {
+            tier = fiveMinuteTier;
+        } else {
+            HistorySeries.Builder builder = new HistorySeries.Builder(0);
+
+            readRaw(from, to, builder);
+
+            return builder.build();
+        }
+
+        HistorySeries.Builder builder = new HistorySeries.Builder(tier.bucketDuration);
+
+        tier.read(from, to, builder);
+
+        return builder.build();
+    }
+
+    private void checkWritable() {
+        if (isReadOnly) {
+            throw new IllegalStateException("History store is read-only");
+        }
+    }
+
+    private void load() throws IOException {
+        if (!isLoaded && !isReadOnly) {
+            fiveMinuteTier.load();
+            hourlyTier.load();
+
+            //Rebuild the open buckets and anything that closed while the process was dead. Everything
+            //before the newest closed bucket of the next tier is already rolled up, so only the tails are read
+            fiveMinuteTier.replayInto(hourlyTier);
+
+            if (rawFile.exists()) {
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(rawFile, "rw")) {
+                    long records = randomAccessFile.length() / RAW_RECORD_SIZE;
+                    randomAccessFile.setLength(records * RAW_RECORD_SIZE);
+
+                    long position = findFirst(randomAccessFile, RAW_RECORD_SIZE, fiveMinuteTier.getOpenStart());
+                    //The record before the tail is only read for the charger state it leaves behind
+                    long first = Math.max(0, position - RAW_RECORD_SIZE);
+                    DataInputStream input = openAt(randomAccessFile, first);
+
+                    for (long remaining = records - first / RAW_RECORD_SIZE; remaining > 0; remaining--) {
+                        long time = input.readLong();
+                        int current = input.readInt();
+                        int temperature = input.readShort();
+                        int level = input.readByte();
+                        boolean charging = input.readByte() != 0;
+
+                        if (remaining > records - position / RAW_RECORD_SIZE) {
+                            lastRawTime = time;
+                            lastRawCharging = charging;
+                        } else {
+                            accumulate(time, level, temperature, current, charging);
+                        }
+                    }
+                }
+            }
+
+            isLoaded = true;
+        }
+    }
+
+    private void accumulate(long time, int level, int temperature, int current, boolean charging) throws IOException {
+        int chargingMillis = lastRawCharging && time - lastRawTime <= MAX_CHARGING_GAP ? (int) (time - lastRawTime) : 0;
+
+        lastRawTime = time;
+        lastRawCharging = charging;
+
+        rawBucket.set(time, level, temperature, current, chargingMillis);
+
+        HistoryBucket closedBucket = fiveMinuteTier.add(rawBucket);
+
+        if (closedBucket != null) {
+            hourlyTier.add(closedBucket);
+        }
+    }
+
+    private void readRaw(long from, long to, HistorySeries.Builder builder) throws IOException {
+        if (rawFile.exists()) {
+            //One handle for the search and the read, so a trim renaming the file from the writer cannot land in between
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(rawFile, "r")) {
+                long position = findFirst(randomAccessFile, RAW_RECORD_SIZE, from);
+                long length = randomAccessFile.length();
+                DataInputStream input = openAt(randomAccessFile, position);
+
+                for (long remaining = (length - position) / RAW_RECORD_SIZE; remaining > 0; remaining--) {
+                    long time = input.readLong();
+                    int current = input.readInt();
+                    int temperature = input.readShort();
+                    int level = input.readByte();
+
+                    input.readByte();
+
+                    if (time > to) {
+                        break;
+                    }
+
+                    HistoryBucket bucket = new HistoryBucket();
+                    bucket.set(time, level, temperature, current, 0);
+                    builder.add(bucket);
+                }
+            }
+        }
+    }
+
+    private static void writeRaw(DataOutputStream output, long time, int level, int temperature, int current, boolean charging) throws IOException {
+        output.writeLong(time);
+        output.writeInt(current);
+        output.writeShort(temperature);
+        output.writeByte(level);
+        output.writeByte(charging ? 1 : 0);
+    }
+
+    //Rewrites the file without the records older than the cutoff. The rename keeps a crash from tearing it
+    private static void trim(File file, int recordSize, long cutoff) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        boolean isTrimmed = false;
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            long position = findFirst(randomAccessFile, recordSize, cutoff);
+
+            if (position > 0) {
+                InputStream input = openAt(randomAccessFile, position);
+
+                try (OutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                    byte[] buffer = new byte[8192];
+
+                    for (int read; (read = input.read(buffer)) > 0; ) {
+                        output.write(buffer, 0, read);
+                    }
+                }
+
+                isTrimmed = true;
+            }
+        }
+
+        if (isTrimmed && !tempFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    //Byte offset of the first record at or after the time
+    static long findFirst(RandomAccessFile randomAccessFile, int recordSize, long time) throws IOException {
+        long low = 0, high = randomAccessFile.length() / recordSize;
+
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+
+            randomAccessFile.seek(middle * recordSize);
+
+            if (randomAccessFile.readLong() < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low * recordSize;
+    }
+
+    //Buffered stream from the position, sharing the file's handle. Closed with the file
+    static DataInputStream openAt(RandomAccessFile randomAccessFile, long position) throws IOException {
+        randomAccessFile.seek(position);
+
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(randomAccessFile.getChannel())));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.history;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+//Append-only file of fixed size buckets, filled as each bucket closes
+class RollupTier {
+    final File file;
+    final long bucketDuration;
+    final long retention;
+    private final HistoryBucket openBucket = new HistoryBucket();
+    private final HistoryBucket closedBucket = new HistoryBucket();
+    private long lastClosedStart = -1;
+
+    RollupTier(File file, long bucketDuration, long retention) {
+        this.file = file;
+        this.bucketDuration = bucketDuration;
+        this.retention = retention;
+    }
+
+    void load() throws IOException {
+        openBucket.count = 0;
+        lastClosedStart = -1;
+
+        if (file.exists()) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                long records = randomAccessFile.length() / HistoryBucket.RECORD_SIZE;
+
+                //Drop a record torn by the process dying mid-write
+                randomAccessFile.setLength(records * HistoryBucket.RECORD_SIZE);
+
+                if (records > 0) {
+                    randomAccessFile.seek((records - 1) * HistoryBucket.RECORD_SIZE);
+                    lastClosedStart = randomAccessFile.readLong();
+                }
+            }
+        }
+    }
+
+    //Returns the bucket that was closed by adding this one, or null if the current bucket is still open
+    HistoryBucket add(HistoryBucket bucket) throws IOException {
+        long start = bucket.start - bucket.start % bucketDuration;
+
+        //Already rolled up before the process restarted, or the clock went backwards
+        if (start <= lastClosedStart || (openBucket.count > 0 && start < openBucket.start)) {
+            return null;
+        }
+
+        HistoryBucket result = null;
+
+        if (openBucket.count > 0 && start != openBucket.start) {
+            closedBucket.set(openBucket);
+            append(closedBucket);
+
+            lastClosedStart = closedBucket.start;
+            openBucket.count = 0;
+            result = closedBucket;
+        }
+
+        if (openBucket.count == 0) {
+            openBucket.set(bucket);
+            openBucket.start = start;
+        } else {
+            openBucket.merge(bucket);
+        }
+
+        return result;
+    }
+
+    //Start of the bucket that is open, or would be if it had samples. Everything before it is on disk
+    long getOpenStart() {
+        return lastClosedStart < 0 ? Long.MIN_VALUE : lastClosedStart + bucketDuration;
+    }
+
+    HistoryBucket getOpenBucket() {
+        return openBucket.count > 0 ? openBucket : null;
+    }
+
+    void read(long from, long to, HistorySeries.Builder builder) throws IOException {
+        if (file.exists()) {
+            //One handle for the search and the read, so a trim renaming the file from the writer cannot land in between
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                long position = HistoryStore.findFirst(randomAccessFile, HistoryBucket.RECORD_SIZE, from - bucketDuration + 1);
+                long length = randomAccessFile.length();
+                DataInputStream input = HistoryStore.openAt(randomAccessFile, position);
+
+                for (long remaining = (length - position) / HistoryBucket.RECORD_SIZE; remaining > 0; remaining--) {
+                    HistoryBucket bucket = new HistoryBucket();
+                    bucket.read(input);
+
+                    if (bucket.start > to) {
+                        break;
+                    }
+
+                    builder.add(bucket);
+                }
+            }
+        }
+
+        HistoryBucket open = getOpenBucket();
+
+        if (open != null && open.start <= to && open.start + bucketDuration > from) {
+            HistoryBucket bucket = new HistoryBucket();
+            bucket.set(open);
+            builder.add(bucket);
+        }
+    }
+
+    //Only the buckets from the coarser tier's open bucket on, the ones before it are already rolled up
+    void replayInto(RollupTier tier) throws IOException {
+        if (file.exists()) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                long position = HistoryStore.findFirst(randomAccessFile, HistoryBucket.RECORD_SIZE, tier.getOpenStart());
+                DataInputStream input = HistoryStore.openAt(randomAccessFile, position);
+                HistoryBucket bucket = new HistoryBucket();
+
+                for (long remaining = (randomAccessFile.length() - position) / HistoryBucket.RECORD_SIZE; remaining > 0; remaining--) {
+                    bucket.read(input);
+                    tier.add(bucket);
+                }
+            }
+        }
+    }
+
+    private void append(HistoryBucket bucket) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            bucket.write(output);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.monitor;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.receiver.BatteryBroadcastReceiver;
+import com.ominous.batterynotification.util.StorageUtils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+//The UI's side of the monitor process. Everything goes through explicit broadcasts to the unexported
+//BatteryBroadcastReceiver, so the monitor is only started when it is actually needed
+public class MonitorClient {
+    //One thread, so the broadcasts keep their order
+    private final static Executor sendExecutor = Executors.newSingleThreadExecutor();
+
+    public interface TraceLogCallback {
+        void onTraceLog(String traceLog);
+    }
+
+    public static void startNotification(Context context) {
+        send(context, BatteryBroadcastReceiver.ACTION_START);
+    }
+
+    //The monitor has its own copy of the preferences, which has to be reloaded after every change
+    public static void onPreferencesChanged(Context context) {
+        send(context, BatteryBroadcastReceiver.ACTION_PREFERENCES_CHANGED);
+    }
+
+    public static void requestTraceLog(Context context, TraceLogCallback callback) {
+        context.sendOrderedBroadcast(
+                new Intent(context, BatteryBroadcastReceiver.class).setAction(BatteryBroadcastReceiver.ACTION_DUMP_TRACE),
+                null,
+                new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        String traceLog = getResultData();
+
+                        callback.onTraceLog(traceLog == null ? "" : traceLog);
+                    }
+                },
+                null,
+                Activity.RESULT_OK,
+                null,
+                null);
+    }
+
+    //State written by the monitor. It is the only writer, so the UI reloads it on every read
+    public static SharedPreferences getMonitorState(Context context) {
+        return StorageUtils.getMultiProcessPreferences(context, R.string.preference_monitor_state_filename);
+    }
+
+    //The monitor reloads the file when it gets the broadcast, so it is only sent once the pending apply()
+    //writes are on disk. An empty commit waits for them, on its own thread so the UI never does
+    private static void send(Context context, String action) {
+        Context applicationContext = context.getApplicationContext();
+
+        sendExecutor.execute(() -> {
+            StorageUtils.getPreferences(applicationContext).edit().commit();
+
+            applicationContext.sendBroadcast(new Intent(applicationContext, BatteryBroadcastReceiver.class).setAction(action));
+        });
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.monitor;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleBus;
+import com.ominous.batterynotification.bus.BatterySnapshotStore;
+import com.ominous.batterynotification.charge.CapacityEstimator;
+import com.ominous.batterynotification.charge.CapacitySink;
+import com.ominous.batterynotification.charge.ChargeCurveSink;
+import com.ominous.batterynotification.charge.ChargeCurves;
+import com.ominous.batterynotification.receiver.ScreenStateReceiver;
+import com.ominous.batterynotification.trace.TriggerSource;
+import com.ominous.batterynotification.trace.TriggerStats;
+import com.ominous.batterynotification.util.BatterySample;
+import com.ominous.batterynotification.util.BatterySnapshot;
+import com.ominous.batterynotification.util.NotificationUtils;
+import com.ominous.batterynotification.work.BatteryWorkManager;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+//The monitor's state for dumpsys, printed in one pass over counters that are kept anyway:
+//adb shell dumpsys activity service com.ominous.batterynotification/.service.BatteryService [--kv]
+//--kv prints one section.key=value pair per line for scraping
+public class MonitorDump {
+    private final PrintWriter writer;
+    private final boolean isKeyValue;
+    private String section;
+
+    private MonitorDump(PrintWriter writer, boolean isKeyValue) {
+        this.writer = writer;
+        this.isKeyValue = isKeyValue;
+    }
+
+    public static void dump(Context context, PrintWriter writer, String[] args) {
+        boolean isKeyValue = false;
+
+        for (String arg : args) {
+            isKeyValue |= "--kv".equals(arg);
+        }
+
+        new MonitorDump(writer, isKeyValue).dump(context);
+    }
+
+    private void dump(Context context) {
+        long now = SystemClock.elapsedRealtime();
+        BatterySnapshot snapshot = BatterySnapshotStore.peek();
+        BatterySample sample = BatterySampleBus.getLatestSample();
+
+        section("snapshot");
+        if (snapshot != null) {
+            value("age_ms", now - snapshot.elapsedRealtime);
+            value("level", snapshot.level);
+            value("temperature", snapshot.temperature);
+            value("voltage", snapshot.voltage);
+            value("health", snapshot.health);
+            value("status", snapshot.status);
+            value("plugged", snapshot.plugged);
+        }
+        if (sample != null) {
+            value("sample_age_ms", now - sample.elapsedRealtime);
+            value("sample_fields", sample.fields);
+            value("sample_amperage", sample.amperage);
+            value("sample_time_remaining_s", sample.timeRemaining);
+        }
+
+        section("scheduler");
+        value("tracking_battery_changes", BatterySnapshotStore.isTracking());
+        value("paused", ScreenStateReceiver.isPaused());
+        value("screen_on", ScreenStateReceiver.isScreenOn());
+        value("update_interval_ms", BatteryWorkManager.getUpdateInterval());
+        long levelAlarmTime = BatteryWorkManager.getLevelAlarmTime();
+        value("level_alarm_in_ms", levelAlarmTime == 0 ? -1 : levelAlarmTime - now);
+
+        section("cache");
+        ChargeCurves chargeCurves = ChargeCurveSink.getChargeCurves(context);
+        hitRate("snapshot", BatterySnapshotStore.getHits(), BatterySnapshotStore.getMisses());
+        hitRate("template", NotificationUtils.getTemplateHits(), NotificationUtils.getTemplateCompiles());
+        hitRate("time_remaining", chargeCurves.getLookups() - chargeCurves.getUnknownLookups(), chargeCurves.getUnknownLookups());
+
+        section("capacity");
+        CapacityEstimator capacityEstimator = CapacitySink.getCapacityEstimator(context);
+        value("capacity_mah", capacityEstimator.getCapacity());
+        value("deviation_mah", capacityEstimator.getDeviation());
+        value("design_mah", CapacitySink.getDesignCapacity(context));
+        value("sessions", capacityEstimator.getSessions());
+        value("rejected", capacityEstimator.getRejected());
+
+        section("latency_us");
+        value("p50", TriggerStats.getLatencyPercentile(50));
+        value("p90", TriggerStats.getLatencyPercentile(90));
+        value("p99", TriggerStats.getLatencyPercentile(99));
+
+        int[] counts = new int[TriggerSource.COUNT];
+        int[] wastedCounts = new int[TriggerSource.COUNT];
+        long[] costs = new long[TriggerSource.COUNT];
+        TriggerStats.getTotals(TriggerStats.WINDOW_DAY, counts, wastedCounts, costs);
+
+        section("updates_24h");
+        int totalCount = 0, totalWastedCount = 0;
+        long totalCost = 0;
+        for (int source = 0; source < TriggerSource.COUNT; source++) {
+            if (counts[source] > 0) {
+                value(TriggerSource.getName(source).toLowerCase(Locale.US) + "_count", counts[source]);
+                value(TriggerSource.getName(source).toLowerCase(Locale.US) + "_wasted", wastedCounts[source]);
+            }
+
+            totalCount += counts[source];
+            totalWastedCount += wastedCounts[source];
+            totalCost += costs[source];
+        }
+        value("count", totalCount);
+        value("wasted", totalWastedCount);
+
+        section("suppressed");
+        ScreenStateReceiver.flushSkippedRefreshes(context);
+        value("skipped_while_paused", ScreenStateReceiver.getSkippedRefreshes());
+        value("skipped_total", MonitorPreferences.getMonitorState(context)
+                .getLong(context.getString(R.string.preference_refreshes_skipped), 0));
+
+        section("overhead");
+        value("publish_cpu_24h_ms", totalCost / 1000000);
+        value("process_cpu_ms", Process.getElapsedCpuTime());
+        value("boot_to_notification_ms", MonitorPreferences.getMonitorState(context)
+                .getLong(context.getString(R.string.preference_boot_to_notification), -1));
+
+        writer.flush();
+    }
+
+    private void section(String name) {
+        section = name;
+
+        if (!isKeyValue) {
+            writer.println(name + ":");
+        }
+    }
+
+    private void value(String key, Object value) {
+        if (isKeyValue) {
+            writer.println(section + "." + key + "=" + value);
+        } else {
+            writer.println("  " + key + ": " + value);
+        }
+    }
+
+    private void hitRate(String name, long hits, long misses) {
+        value(name + "_hits", hits);
+        value(name + "_misses", misses);
+        value(name + "_hit_rate", hits + misses == 0 ? "-" : String.format(Locale.US, "%.3f", hits / (double) (hits + misses)));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.monitor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.provider.Settings;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.util.StorageUtils;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//Change listeners are not called across processes, so the monitor reloads the settings when the UI
+//says they changed and notifies its listeners itself
+public class MonitorPreferences {
+    private final static CopyOnWriteArrayList<SharedPreferences.OnSharedPreferenceChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private static Boolean isSameBoot;
+
+    public static void registerListener(SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void reload(Context context) {
+        SharedPreferences sharedPreferences = StorageUtils.getMultiProcessPreferences(context, R.string.preference_filename);
+
+        for (SharedPreferences.OnSharedPreferenceChangeListener listener : listeners) {
+            listener.onSharedPreferenceChanged(sharedPreferences, null);
+        }
+    }
+
+    public static SharedPreferences getMonitorState(Context context) {
+        return StorageUtils.getStorageContext(context).getSharedPreferences(context.getString(R.string.preference_monitor_state_filename), Context.MODE_PRIVATE);
+    }
+
+    //-1 before 24, where there is no boot count
+    public static int getBootCount(Context context) {
+        return Build.VERSION.SDK_INT >= 24 ?
+                Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1) :
+                -1;
+    }
+
+    //Whether the elapsed realtime values in the monitor state were stored during this boot. Only exact
+    //on 24+, so callers should also check that the values are not in the future
+    public static synchronized boolean isSameBoot(Context context) {
+        if (isSameBoot == null) {
+            SharedPreferences monitorState = getMonitorState(context);
+            int bootCount = getBootCount(context);
+
+            isSameBoot = monitorState.getInt(context.getString(R.string.preference_state_boot_count), -1) == bootCount;
+
+            if (!isSameBoot) {
+                monitorState.edit()
+                        .putInt(context.getString(R.string.preference_state_boot_count), bootCount)
+                        .apply();
+            }
+        }
+
+        return isSameBoot;
+    }
+}
@@ -22,52 +22,139 @@ package com.ominous.batterynotification.receiver;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Build;
-import android.util.Log;
 import android.widget.Toast;
 
 import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleBus;
+import com.ominous.batterynotification.bus.BatterySnapshotStore;
+import com.ominous.batterynotification.history.HistorySink;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
 import com.ominous.batterynotification.service.BatteryService;
+import com.ominous.batterynotification.trace.StallDetector;
+import com.ominous.batterynotification.trace.TraceRecorder;
+import com.ominous.batterynotification.trace.TriggerSource;
+import com.ominous.batterynotification.trace.TriggerStats;
 import com.ominous.batterynotification.util.NotificationUtils;
+import com.ominous.batterynotification.util.StorageUtils;
+import com.ominous.batterynotification.work.BatteryWorkManager;
 
 public class BatteryBroadcastReceiver extends BroadcastReceiver {
     public final static String ACTION_UPDATE = "com.ominous.batterynotification.UPDATE_ACTION";
-    private final static String TAG = "BatBroadcastReceiver";
+    public final static String ACTION_LEVEL_ALARM = "com.ominous.batterynotification.LEVEL_ALARM_ACTION";
+    //Sent by MonitorClient from the UI process
+    public final static String ACTION_START = "com.ominous.batterynotification.START_ACTION";
+    public final static String ACTION_PREFERENCES_CHANGED = "com.ominous.batterynotification.PREFERENCES_CHANGED_ACTION";
+    public final static String ACTION_DUMP_TRACE = "com.ominous.batterynotification.DUMP_TRACE_ACTION";
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        if (ACTION_DUMP_TRACE.equals(intent.getAction())) {
+            setResultData(TriggerStats.dump() + StallDetector.dump() + TraceRecorder.dump());
+            return;
+        } else if (ACTION_START.equals(intent.getAction()) || ACTION_PREFERENCES_CHANGED.equals(intent.getAction())) {
+            MonitorPreferences.reload(context);
+        } else if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction()) && StorageUtils.migrate(context)) {
+            //Settings from an older version could only be moved now that the user has unlocked
+            MonitorPreferences.reload(context);
+        }
+
         if (intent.getAction() != null && isNotificationEnabled(context)) {
+            long start = TraceRecorder.begin(TraceRecorder.EVENT_RECEIVE);
+
             switch (intent.getAction()) {
                 case ACTION_UPDATE:
+                    if (isHistoryEnabled(context)) {
+                        HistorySink.compactIfDue(context);
+                    }
+
+                    ScreenStateReceiver.onUpdateAlarm(context, intent.getBooleanExtra(BatteryWorkManager.EXTRA_PAUSED, false));
+
+                    break;
+                case ACTION_START:
+                    NotificationUtils.startBatteryNotification(context, TriggerSource.SETTINGS);
+
+                    break;
+                case ACTION_PREFERENCES_CHANGED:
+                    BatterySampleBus.publish(context, TriggerSource.SETTINGS);
+
+                    break;
+                case ACTION_LEVEL_ALARM:
+                    BatterySampleBus.publish(context, TriggerSource.LEVEL_ALARM);
+
+                    break;
                 case Intent.ACTION_POWER_CONNECTED:
+                    BatterySnapshotStore.invalidate();
+                    BatterySampleBus.publish(context, TriggerSource.POWER_CONNECTED);
+
+                    break;
                 case Intent.ACTION_POWER_DISCONNECTED:
-                    Log.v(TAG, "Updating Battery Notification in background");
-                    NotificationUtils.updateBatteryNotification(context);
+                    BatterySnapshotStore.invalidate();
+                    BatterySampleBus.publish(context, TriggerSource.POWER_DISCONNECTED);
 
                     break;
-                case Intent.ACTION_MY_PACKAGE_REPLACED:
+                case Intent.ACTION_LOCKED_BOOT_COMPLETED:
                 case Intent.ACTION_BOOT_COMPLETED:
+                    if (markStartedThisBoot(context)) {
+                        start(context, TriggerSource.BOOT);
+                    }
+
+                    break;
+                case Intent.ACTION_MY_PACKAGE_REPLACED:
                     Toast.makeText(context, context.getString(R.string.message_starting), Toast.LENGTH_SHORT).show();
 
-                    NotificationUtils.startBatteryNotification(context);
+                    start(context, TriggerSource.PACKAGE_REPLACED);
 
-                    if (context.getSharedPreferences(context.getString(R.string.preference_filename), Context.MODE_PRIVATE)
-                            .getBoolean(context.getString(R.string.preference_immediate), false)) {
-                        if (Build.VERSION.SDK_INT >= 26) {
-                            context.startForegroundService(new Intent(context, BatteryService.class));
-                        } else {
-                            context.startService(new Intent(context, BatteryService.class));
-                        }
-                    }
                     break;
                 default:
-                    Log.e(TAG, context.getString(R.string.message_received_strange_intent, intent.getAction()));
+                    TraceRecorder.mark(TraceRecorder.EVENT_UNEXPECTED_ACTION, TriggerSource.UNKNOWN);
             }
+
+            TraceRecorder.end(TraceRecorder.EVENT_RECEIVE, start);
+        }
+    }
+
+    private void start(Context context, int source) {
+        NotificationUtils.startBatteryNotification(context, source);
+
+        if (StorageUtils.getPreferences(context)
+                .getBoolean(context.getString(R.string.preference_immediate), false)) {
+            if (Build.VERSION.SDK_INT >= 26) {
+                context.startForegroundService(new Intent(context, BatteryService.class));
+            } else {
+                context.startService(new Intent(context, BatteryService.class));
+            }
+        }
+    }
+
+    //LOCKED_BOOT_COMPLETED and BOOT_COMPLETED both arrive on 24+, only the first one starts the notification.
+    //The monitor can die in between, so the guard is the stored boot count. Returns false if already started
+    private static boolean markStartedThisBoot(Context context) {
+        if (Build.VERSION.SDK_INT < 24) {
+            return true;
+        }
+
+        SharedPreferences monitorState = MonitorPreferences.getMonitorState(context);
+        int bootCount = MonitorPreferences.getBootCount(context);
+
+        if (bootCount >= 0 && monitorState.getInt(context.getString(R.string.preference_started_boot_count), -1) == bootCount) {
+            return false;
         }
+
+        monitorState.edit()
+                .putInt(context.getString(R.string.preference_started_boot_count), bootCount)
+                .apply();
+
+        return true;
     }
 
     private boolean isNotificationEnabled(Context context) {
-        return context.getSharedPreferences(context.getString(R.string.preference_filename), Context.MODE_PRIVATE).getBoolean(context.getString(R.string.preference_notification), false) &&
+        return StorageUtils.getPreferences(context).getBoolean(context.getString(R.string.preference_notification), false) &&
                 NotificationUtils.canShowNotifications(context);
     }
+
+    private boolean isHistoryEnabled(Context context) {
+        return StorageUtils.getPreferences(context).getBoolean(context.getString(R.string.preference_history), false);
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.receiver;
+
+import android.app.KeyguardManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleBus;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
+import com.ominous.batterynotification.util.StorageUtils;
+import com.ominous.batterynotification.work.BatteryWorkManager;
+import com.ominous.batterynotification.work.UpdatePolicy;
+import com.ominous.batterynotification.work.UpdateScheduler;
+
+import androidx.core.content.ContextCompat;
+
+//Pauses notification refreshes while nobody can see them. Screen broadcasts can only be received by
+//registered receivers, so the paused alarm also wakes the process up once the device is in use again
+public class ScreenStateReceiver extends BroadcastReceiver {
+    //Skipped refreshes since the process started, and the ones not yet added to the stored total
+    private static int skippedRefreshes, unflushedRefreshes;
+    //Whether the screen is on at all, used to keep separate drain baselines
+    private static volatile boolean isScreenOn = true;
+    private static volatile long screenChangedAt;
+
+    public static void register(Context context) {
+        IntentFilter intentFilter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        intentFilter.addAction(Intent.ACTION_SCREEN_ON);
+        intentFilter.addAction(Intent.ACTION_USER_PRESENT);
+
+        context.registerReceiver(new ScreenStateReceiver(), intentFilter);
+
+        PowerManager powerManager = ContextCompat.getSystemService(context, PowerManager.class);
+
+        //noinspection deprecation
+        isScreenOn = powerManager == null || (Build.VERSION.SDK_INT >= 20 ? powerManager.isInteractive() : powerManager.isScreenOn());
+        screenChangedAt = SystemClock.elapsedRealtime();
+
+        if (isPauseEnabled(context) && !isScreenVisible(context)) {
+            pause(context);
+        }
+    }
+
+    public static boolean isPaused() {
+        return BatteryWorkManager.getUpdatePolicy().isPaused();
+    }
+
+    public static boolean isScreenOn() {
+        return isScreenOn;
+    }
+
+    public static long getScreenChangedAt() {
+        return screenChangedAt;
+    }
+
+    public static int getSkippedRefreshes() {
+        return skippedRefreshes;
+    }
+
+    //Only refreshes that were delivered and dropped are counted. The alarms do not wake the device,
+    //so pausing saves work on the refreshes that still arrive, not wakeups. Counted in memory, since
+    //a disk write per skip would cost more than the refresh it saves
+    public static synchronized void onRefreshSkipped() {
+        skippedRefreshes++;
+        unflushedRefreshes++;
+    }
+
+    //Adds the skips to the stored total. Runs on resume, on each paused alarm and from dump(), so at
+    //most one paused interval is lost if the monitor is killed
+    public static synchronized void flushSkippedRefreshes(Context context) {
+        if (unflushedRefreshes > 0) {
+            SharedPreferences monitorState = MonitorPreferences.getMonitorState(context);
+
+            monitorState.edit()
+                    .putLong(context.getString(R.string.preference_refreshes_skipped),
+                            monitorState.getLong(context.getString(R.string.preference_refreshes_skipped), 0) + unflushedRefreshes)
+                    .apply();
+
+            unflushedRefreshes = 0;
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!Intent.ACTION_USER_PRESENT.equals(intent.getAction())) {
+            isScreenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+            screenChangedAt = SystemClock.elapsedRealtime();
+        }
+
+        if (Intent.ACTION_SCREEN_OFF.equals(intent.getAction())) {
+            if (isPauseEnabled(context)) {
+                pause(context);
+            }
+        } else if (isScreenVisible(context)) {
+            resume(context);
+        }
+    }
+
+    public static void pause(Context context) {
+        UpdateScheduler scheduler = BatteryWorkManager.getScheduler(context);
+
+        if (BatteryWorkManager.getUpdatePolicy().pause(scheduler)) {
+            SharedPreferences monitorState = MonitorPreferences.getMonitorState(context);
+
+            //Keep the original start if the process was restarted while paused
+            if (monitorState.getLong(context.getString(R.string.preference_paused_since), 0) == 0) {
+                monitorState.edit()
+                        .putLong(context.getString(R.string.preference_paused_since), scheduler.elapsedRealtime())
+                        .apply();
+            }
+        }
+    }
+
+    public static void resume(Context context) {
+        flushSkippedRefreshes(context);
+        publish(context, BatteryWorkManager.getUpdatePolicy().resume(BatteryWorkManager.getScheduler(context), clearPausedSince(context)));
+    }
+
+    public static void onUpdateAlarm(Context context, boolean isPausedAlarm) {
+        UpdatePolicy updatePolicy = BatteryWorkManager.getUpdatePolicy();
+
+        flushSkippedRefreshes(context);
+
+        //The paused start is only cleared once the alarm actually resumes
+        publish(context, updatePolicy.onUpdateAlarm(BatteryWorkManager.getScheduler(context), isPausedAlarm,
+                !updatePolicy.isPaused() && isPausedAlarm && clearPausedSince(context)));
+    }
+
+    //Returns true if refreshes were paused, possibly by a process that has since died
+    private static boolean clearPausedSince(Context context) {
+        SharedPreferences monitorState = MonitorPreferences.getMonitorState(context);
+
+        if (monitorState.getLong(context.getString(R.string.preference_paused_since), 0) > 0) {
+            monitorState.edit()
+                    .putLong(context.getString(R.string.preference_paused_since), 0)
+                    .apply();
+
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private static void publish(Context context, int source) {
+        if (source != UpdatePolicy.NO_PUBLISH) {
+            BatterySampleBus.publish(context, source);
+        }
+    }
+
+    public static boolean isScreenVisible(Context context) {
+        PowerManager powerManager = ContextCompat.getSystemService(context, PowerManager.class);
+        KeyguardManager keyguardManager = ContextCompat.getSystemService(context, KeyguardManager.class);
+
+        //noinspection deprecation
+        return (powerManager == null || (Build.VERSION.SDK_INT >= 20 ? powerManager.isInteractive() : powerManager.isScreenOn())) &&
+                (keyguardManager == null || !keyguardManager.isKeyguardLocked());
+    }
+
+    private static boolean isPauseEnabled(Context context) {
+        SharedPreferences sharedPreferences = StorageUtils.getPreferences(context);
+
+        return sharedPreferences.getBoolean(context.getString(R.string.preference_notification), false) &&
+                sharedPreferences.getBoolean(context.getString(R.string.preference_pause_screen_off), false);
+    }
+}
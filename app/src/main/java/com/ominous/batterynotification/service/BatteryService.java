@@ -27,16 +27,26 @@ import android.content.IntentFilter;
 import android.os.IBinder;
 import android.util.Log;
 
+import com.ominous.batterynotification.bus.BatterySampleBus;
+import com.ominous.batterynotification.bus.BatterySnapshotStore;
+import com.ominous.batterynotification.monitor.MonitorDump;
+import com.ominous.batterynotification.trace.TraceRecorder;
+import com.ominous.batterynotification.trace.TriggerSource;
+import com.ominous.batterynotification.util.BatterySnapshot;
 import com.ominous.batterynotification.util.NotificationUtils;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 //Updates immediately, or after 1 minute
 public class BatteryService extends Service {
     public final static IntentFilter UPDATE_FILTER = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
     private final static String TAG = "BatteryService";
     private final BroadcastReceiver bbr = new BroadcastReceiver() {
         public void onReceive(Context context, Intent intent) {
-            Log.v(TAG, "Updating Battery Notification in foreground");
-            NotificationUtils.updateBatteryNotification(context, intent);
+            long start = TraceRecorder.begin(TraceRecorder.EVENT_RECEIVE);
+            BatterySampleBus.publish(context, intent, TriggerSource.SERVICE);
+            TraceRecorder.end(TraceRecorder.EVENT_RECEIVE, start);
         }
     };
 
@@ -51,18 +61,27 @@ public class BatteryService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         //TODO this throws ForegroundServiceStartNotAllowedException on some devices because of battery optimization
 
+        BatterySnapshot snapshot = BatterySnapshotStore.update(this.registerReceiver(bbr, UPDATE_FILTER));
+        BatterySnapshotStore.setTracking(true);
+
         this.startForeground(NotificationUtils.NOTIFICATION_ID,
-                NotificationUtils.makeBatteryNotification(this,
-                        this.registerReceiver(bbr, UPDATE_FILTER)));
+                NotificationUtils.makeBatteryNotification(this, snapshot));
 
         return Service.START_STICKY;
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        MonitorDump.dump(this, writer, args);
+    }
+
     public IBinder onBind(Intent intent) {
         return null;
     }
 
     public void onDestroy() {
+        BatterySnapshotStore.setTracking(false);
+
         try {
             this.unregisterReceiver(bbr);
         } catch (IllegalArgumentException e) {
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.tile;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.SystemClock;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.bus.BatterySampleBus;
+import com.ominous.batterynotification.bus.BatterySampleSink;
+import com.ominous.batterynotification.bus.BatterySnapshotStore;
+import com.ominous.batterynotification.trace.TriggerSource;
+import com.ominous.batterynotification.trace.TriggerStats;
+import com.ominous.batterynotification.util.BatterySample;
+import com.ominous.batterynotification.util.BatterySnapshot;
+import com.ominous.batterynotification.util.NotificationTemplate;
+import com.ominous.batterynotification.util.NotificationUtils;
+import com.ominous.batterynotification.util.StorageUtils;
+import com.ominous.batterynotification.work.UpdatePolicy;
+
+import androidx.annotation.RequiresApi;
+
+//Only subscribed to the sample bus while the panel is open, so the tile costs nothing otherwise.
+//Opening the panel shows the latest sample the monitor already has when it is recent and holds every
+//field the tile shows. Otherwise the tile reads one for itself, without publishing it to the other sinks.
+//Opening the panel counts as a TILE update, and any update that changes what the tile shows is visible
+@RequiresApi(24)
+public class BatteryTileService extends TileService implements BatterySampleSink {
+    //One regular update interval
+    private final static long MAX_SAMPLE_AGE = UpdatePolicy.ONE_MIN;
+    private NotificationTemplate labelTemplate, subtitleTemplate;
+    private Icon chargingIcon, dischargingIcon;
+    private volatile int fields;
+    private boolean useFahrenheit;
+    private int shownHash;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        //Subtitles were only added in 29, before that everything goes in the label
+        labelTemplate = NotificationTemplate.compile(getString(Build.VERSION.SDK_INT >= 29 ?
+                R.string.tile_label_template :
+                R.string.tile_combined_template));
+        subtitleTemplate = NotificationTemplate.compile(getString(R.string.tile_subtitle_template));
+        chargingIcon = Icon.createWithResource(this, R.drawable.ic_battery_charging_full_white_24dp);
+        dischargingIcon = Icon.createWithResource(this, R.drawable.ic_battery_full_white_24dp);
+    }
+
+    @Override
+    public void onStartListening() {
+        super.onStartListening();
+
+        SharedPreferences sharedPreferences = StorageUtils.getPreferences(this);
+        int fields = BatterySample.FIELD_STATUS | labelTemplate.fields | (Build.VERSION.SDK_INT >= 29 ? subtitleTemplate.fields : 0);
+
+        if (!sharedPreferences.getBoolean(getString(R.string.preference_time_remaining), false)) {
+            fields &= ~BatterySample.FIELD_TIME_REMAINING;
+        }
+
+        this.fields = fields;
+        useFahrenheit = sharedPreferences.getBoolean(getString(R.string.preference_fahrenheit), false);
+
+        BatterySampleBus.subscribe(this);
+
+        long statsStart = TriggerStats.begin();
+        BatterySample sample = BatterySampleBus.getLatestSample();
+
+        if (sample == null || !sample.has(fields) || SystemClock.elapsedRealtime() - sample.elapsedRealtime > MAX_SAMPLE_AGE) {
+            //Publishing would repost the notification and run every other sink each time the panel opens
+            BatterySnapshot snapshot = BatterySnapshotStore.get(this);
+
+            sample = snapshot == null ? null : BatterySample.read(this, snapshot, fields);
+        }
+
+        if (sample != null) {
+            onSample(this, sample);
+        }
+
+        TriggerStats.end(this, TriggerSource.TILE, statsStart);
+    }
+
+    @Override
+    public void onStopListening() {
+        BatterySampleBus.unsubscribe(this);
+
+        super.onStopListening();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void onClick() {
+        Intent intent = new Intent(Intent.ACTION_POWER_USAGE_SUMMARY).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        if (Build.VERSION.SDK_INT >= 34) {
+            startActivityAndCollapse(PendingIntent.getActivity(this, 0, intent, NotificationUtils.FLAG_IMMUTABLE));
+        } else {
+            startActivityAndCollapse(intent);
+        }
+    }
+
+    @Override
+    public int getFields(Context context) {
+        return fields;
+    }
+
+    @Override
+    public void onSample(Context context, BatterySample sample) {
+        Tile tile = getQsTile();
+
+        if (tile != null) {
+            String label = labelTemplate.render(this, sample, useFahrenheit);
+            String subtitle = Build.VERSION.SDK_INT >= 29 ? subtitleTemplate.render(this, sample, useFahrenheit) : "";
+            int hash = (label.hashCode() * 31 + subtitle.hashCode()) * 31 + (sample.isCharging() ? 1 : 0);
+
+            tile.setState(sample.isCharging() ? Tile.STATE_ACTIVE : Tile.STATE_INACTIVE);
+            tile.setIcon(sample.isCharging() ? chargingIcon : dischargingIcon);
+            tile.setLabel(label);
+
+            if (Build.VERSION.SDK_INT >= 29) {
+                tile.setSubtitle(subtitle);
+            }
+
+            tile.updateTile();
+
+            if (hash != shownHash) {
+                shownHash = hash;
+                TriggerStats.onVisibleChange();
+            }
+        }
+    }
+}
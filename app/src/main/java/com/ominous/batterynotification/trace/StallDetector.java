@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.trace;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.ominous.batterynotification.BuildConfig;
+import com.ominous.batterynotification.util.StorageUtils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.Date;
+
+//Debug builds only. Times every message on the monitor's main looper, and logs the ones that run
+//longer than STALL_THRESHOLD with the main thread's stack and the trigger source, since they block
+//the receivers and risk an ANR. The stack is taken by a watchdog thread while the message is still
+//running, and nothing is polled while the looper is idle. StrictMode violations go to the same log
+public class StallDetector {
+    private final static String TAG = "StallDetector";
+    private final static long STALL_THRESHOLD = 100;
+    //Two files of this size are kept, the current one and the previous one
+    private final static long MAX_LOG_SIZE = 32 * 1024;
+    private final static String LOG_FILENAME = "stalls.log";
+
+    private static File logFile;
+    private static Handler watchdogHandler;
+    private static Thread mainThread;
+    private static volatile int dispatchSequence;
+    private static volatile int capturedSequence = -1;
+    private static volatile StackTraceElement[] capturedStack;
+    private static long dispatchStart;
+    private static String dispatchMessage;
+
+    private final static Runnable captureStack = () -> {
+        int sequence = dispatchSequence;
+
+        capturedStack = mainThread.getStackTrace();
+        capturedSequence = sequence;
+    };
+
+    public static void install(Context context) {
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+
+        HandlerThread watchdogThread = new HandlerThread(TAG);
+        watchdogThread.start();
+
+        logFile = new File(StorageUtils.getFilesDir(context), LOG_FILENAME);
+        watchdogHandler = new Handler(watchdogThread.getLooper());
+        mainThread = Looper.getMainLooper().getThread();
+
+        StrictMode.ThreadPolicy.Builder threadPolicy = new StrictMode.ThreadPolicy.Builder()
+                .detectAll()
+                .penaltyLog();
+
+        if (Build.VERSION.SDK_INT >= 28) {
+            threadPolicy.penaltyListener(command -> watchdogHandler.post(command),
+                    violation -> append("StrictMode " + violation.getMessage(), violation.getStackTrace()));
+        }
+
+        //Called on the main thread, which the policy applies to
+        StrictMode.setThreadPolicy(threadPolicy.build());
+
+        //The looper prints ">>>>> Dispatching to ..." before and "<<<<< Finished to ..." after each message
+        Looper.getMainLooper().setMessageLogging(message -> {
+            if (message.startsWith(">")) {
+                dispatchSequence++;
+                dispatchStart = SystemClock.uptimeMillis();
+                dispatchMessage = message;
+                watchdogHandler.postDelayed(captureStack, STALL_THRESHOLD);
+            } else if (message.startsWith("<")) {
+                long duration = SystemClock.uptimeMillis() - dispatchStart;
+
+                watchdogHandler.removeCallbacks(captureStack);
+
+                if (duration > STALL_THRESHOLD) {
+                    String entry = duration + "ms " + TriggerSource.getName(TraceRecorder.getCurrentSource()) + " " + dispatchMessage;
+                    StackTraceElement[] stack = capturedSequence == dispatchSequence ? capturedStack : null;
+
+                    watchdogHandler.post(() -> append(entry, stack));
+                }
+            }
+        });
+    }
+
+    private static void append(String entry, StackTraceElement[] stack) {
+        Log.w(TAG, entry);
+
+        if (logFile.length() > MAX_LOG_SIZE) {
+            //noinspection ResultOfMethodCallIgnored
+            logFile.renameTo(getPreviousLogFile());
+        }
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(logFile, true))) {
+            writer.println(new Date() + " " + entry);
+
+            if (stack != null) {
+                for (StackTraceElement element : stack) {
+                    writer.println("    at " + element);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static File getPreviousLogFile() {
+        return new File(logFile.getPath() + ".1");
+    }
+
+    public static String dump() {
+        if (!BuildConfig.DEBUG || logFile == null) {
+            return "";
+        }
+
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (File file : new File[]{getPreviousLogFile(), logFile}) {
+            try (Reader reader = new FileReader(file)) {
+                char[] buffer = new char[4096];
+                int length;
+
+                while ((length = reader.read(buffer)) > 0) {
+                    stringBuilder.append(buffer, 0, length);
+                }
+            } catch (IOException e) {
+                //Not written yet
+            }
+        }
+
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.trace;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.ominous.batterynotification.BuildConfig;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Records the update path into a preallocated ring of fixed size binary records, and marks each stage
+//with a Trace section for systrace/Perfetto. Recording is compiled out of release builds
+public class TraceRecorder {
+    public final static int EVENT_RECEIVE = 0;
+    public final static int EVENT_PUBLISH = 1;
+    public final static int EVENT_READ_SAMPLE = 2;
+    public final static int EVENT_NOTIFY = 3;
+    public final static int EVENT_ALERTS = 4;
+    public final static int EVENT_SKIPPED = 5;
+    public final static int EVENT_UNEXPECTED_ACTION = 6;
+    public final static int EVENT_BOOT_TO_NOTIFY = 7;
+
+    private final static String[] EVENT_NAMES = {
+            "BN:receive",
+            "BN:publish",
+            "BN:readSample",
+            "BN:notify",
+            "BN:alerts",
+            "BN:skipped",
+            "BN:unexpectedAction",
+            "BN:bootToNotify"
+    };
+
+    private final static boolean ENABLED = BuildConfig.DEBUG;
+    private final static int CAPACITY = 1024;
+
+    //Two longs per record: the start time in nanoseconds, then the event, source and duration
+    //in microseconds packed as 8, 8 and 48 bits
+    private final static long[] records = new long[ENABLED ? CAPACITY * 2 : 0];
+    private final static AtomicLong position = new AtomicLong();
+    private static volatile int currentSource = TriggerSource.UNKNOWN;
+
+    public static long begin(int event) {
+        if (Build.VERSION.SDK_INT >= 18) {
+            Trace.beginSection(EVENT_NAMES[event]);
+        }
+
+        return ENABLED ? SystemClock.elapsedRealtimeNanos() : 0;
+    }
+
+    public static void end(int event, long start) {
+        if (Build.VERSION.SDK_INT >= 18) {
+            Trace.endSection();
+        }
+
+        if (ENABLED) {
+            record(event, currentSource, start, SystemClock.elapsedRealtimeNanos() - start);
+        }
+    }
+
+    public static void mark(int event, int source) {
+        if (ENABLED) {
+            record(event, source, SystemClock.elapsedRealtimeNanos(), 0);
+        }
+    }
+
+    //Recorded as a span that starts at boot
+    public static void markSinceBoot(int event, int source) {
+        if (ENABLED) {
+            record(event, source, 0, SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    public static void setCurrentSource(int source) {
+        currentSource = source;
+    }
+
+    public static int getCurrentSource() {
+        return currentSource;
+    }
+
+    private static void record(int event, int source, long start, long duration) {
+        int index = (int) (position.getAndIncrement() % CAPACITY) * 2;
+
+        records[index] = start;
+        records[index + 1] = ((long) event << 56) | ((long) (source & 0xFF) << 48) | ((duration / 1000) & 0xFFFFFFFFFFFFL);
+    }
+
+    public static String dump() {
+        if (!ENABLED) {
+            return "";
+        }
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        long end = position.get();
+        StringBuilder stringBuilder = new StringBuilder();
+
+        for (long i = Math.max(0, end - CAPACITY); i < end; i++) {
+            int index = (int) (i % CAPACITY) * 2;
+            long packed = records[index + 1];
+            int event = (int) (packed >>> 56);
+
+            stringBuilder
+                    .append(String.format(Locale.US, "-%.3fs ", (now - records[index]) / 1e9))
+                    .append(event < EVENT_NAMES.length ? EVENT_NAMES[event] : "?")
+                    .append(' ')
+                    .append(TriggerSource.getName((int) ((packed >>> 48) & 0xFF)))
+                    .append(' ')
+                    .append(packed & 0xFFFFFFFFFFFFL)
+                    .append("us\n");
+        }
+
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.trace;
+
+//What caused an update. Kept as ints so they can be packed into trace records and used as indices
+public class TriggerSource {
+    public final static int UNKNOWN = 0;
+    public final static int ALARM = 1;
+    public final static int LEVEL_ALARM = 2;
+    public final static int POWER_CONNECTED = 3;
+    public final static int POWER_DISCONNECTED = 4;
+    public final static int BOOT = 5;
+    public final static int PACKAGE_REPLACED = 6;
+    public final static int SERVICE = 7;
+    public final static int SETTINGS = 8;
+    public final static int SCREEN_ON = 9;
+    public final static int TILE = 10;
+    public final static int COUNT = 11;
+
+    private final static String[] NAMES = {
+            "UNKNOWN",
+            "ALARM",
+            "LEVEL_ALARM",
+            "POWER_CONNECTED",
+            "POWER_DISCONNECTED",
+            "BOOT",
+            "PACKAGE_REPLACED",
+            "SERVICE",
+            "SETTINGS",
+            "SCREEN_ON",
+            "TILE"
+    };
+
+    public static String getName(int source) {
+        return source >= 0 && source < COUNT ? NAMES[source] : NAMES[UNKNOWN];
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.trace;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+//Counts updates per trigger source in hourly buckets, along with the ones that changed nothing
+//visible and the time spent publishing them. Unlike TraceRecorder this also runs in release builds,
+//so it has to stay cheap: recording an update is a few array writes. The monitor is often killed
+//between alarms, so the buckets are kept in the monitor state as a snapshot of the non-empty ones
+public class TriggerStats {
+    public final static int WINDOW_HOUR = 1, WINDOW_DAY = 24;
+    private final static int BUCKETS = WINDOW_DAY;
+    private final static long BUCKET_DURATION = 60 * 60 * 1000;
+    private final static long STORE_INTERVAL = 5 * 60 * 1000;
+
+    private final static long[] bucketNumbers = new long[BUCKETS];
+    private final static int[] counts = new int[BUCKETS * TriggerSource.COUNT];
+    private final static int[] wastedCounts = new int[BUCKETS * TriggerSource.COUNT];
+    private final static long[] costs = new long[BUCKETS * TriggerSource.COUNT];
+    //Publish latency since the process started, in power of two buckets of microseconds
+    private final static long[] latencies = new long[64];
+    private static long startedAt = SystemClock.elapsedRealtime();
+    private static long storedAt = -1;
+    private static volatile boolean isVisibleChange;
+
+    public static long begin() {
+        isVisibleChange = false;
+
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    //Called by whatever shows the update, so an update nobody sees a change from counts as wasted
+    public static void onVisibleChange() {
+        isVisibleChange = true;
+    }
+
+    public static synchronized void end(Context context, int source, long start) {
+        long cost = SystemClock.elapsedRealtimeNanos() - start;
+        long now = SystemClock.elapsedRealtime();
+        long bucketNumber = now / BUCKET_DURATION;
+        int bucket = (int) (bucketNumber % BUCKETS);
+        boolean isRollover = bucketNumbers[bucket] != bucketNumber;
+
+        if (isRollover) {
+            bucketNumbers[bucket] = bucketNumber;
+
+            for (int i = bucket * TriggerSource.COUNT; i < (bucket + 1) * TriggerSource.COUNT; i++) {
+                counts[i] = 0;
+                wastedCounts[i] = 0;
+                costs[i] = 0;
+            }
+        }
+
+        int index = bucket * TriggerSource.COUNT + (source >= 0 && source < TriggerSource.COUNT ? source : TriggerSource.UNKNOWN);
+
+        counts[index]++;
+        costs[index] += cost;
+        latencies[64 - Long.numberOfLeadingZeros(Math.max(0, cost / 1000))]++;
+
+        if (!isVisibleChange) {
+            wastedCounts[index]++;
+        }
+
+        //Besides the rollover, the first update of a process is stored so a monitor that only lives for
+        //one alarm still counts, and a long lived one loses at most one interval when it is killed
+        if (isRollover || storedAt < 0 || now - storedAt >= STORE_INTERVAL) {
+            storedAt = now;
+
+            MonitorPreferences.getMonitorState(context).edit()
+                    .putString(context.getString(R.string.preference_trigger_stats), getSnapshot())
+                    .apply();
+        }
+    }
+
+    //Called once when the monitor starts, before any update is recorded. The buckets are numbered by
+    //elapsed realtime, so a snapshot from another boot is dropped
+    public static synchronized void restore(Context context) {
+        SharedPreferences monitorState = MonitorPreferences.getMonitorState(context);
+        String snapshot = monitorState.getString(context.getString(R.string.preference_trigger_stats), null);
+
+        if (snapshot == null || !MonitorPreferences.isSameBoot(context)) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        long currentBucketNumber = now / BUCKET_DURATION;
+
+        try {
+            String[] buckets = snapshot.split(";");
+            long snapshotStartedAt = Long.parseLong(buckets[0]);
+
+            if (snapshotStartedAt > now) {
+                return;
+            }
+
+            for (int i = 1; i < buckets.length; i++) {
+                String[] entries = buckets[i].split(":");
+                long bucketNumber = Long.parseLong(entries[0]);
+                int bucket = (int) (bucketNumber % BUCKETS);
+
+                if (bucketNumber > currentBucketNumber - BUCKETS && bucketNumber <= currentBucketNumber) {
+                    bucketNumbers[bucket] = bucketNumber;
+
+                    for (int j = 1; j < entries.length; j++) {
+                        String[] values = entries[j].split(",");
+                        int source = Integer.parseInt(values[0]);
+
+                        if (source < 0 || source >= TriggerSource.COUNT) {
+                            continue;
+                        }
+
+                        int index = bucket * TriggerSource.COUNT + source;
+
+                        counts[index] = Integer.parseInt(values[1]);
+                        wastedCounts[index] = Integer.parseInt(values[2]);
+                        costs[index] = Long.parseLong(values[3]);
+                    }
+                }
+            }
+
+            startedAt = Math.min(startedAt, snapshotStartedAt);
+        } catch (RuntimeException e) {
+            //A snapshot from an older version, start over
+            Arrays.fill(bucketNumbers, 0);
+            Arrays.fill(counts, 0);
+            Arrays.fill(wastedCounts, 0);
+            Arrays.fill(costs, 0);
+        }
+    }
+
+    //startedAt;bucketNumber:source,count,wasted,cost:...;... with only the sources that were counted
+    private static String getSnapshot() {
+        StringBuilder stringBuilder = new StringBuilder().append(startedAt);
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            int length = stringBuilder.length();
+
+            stringBuilder.append(';').append(bucketNumbers[bucket]);
+
+            for (int source = 0; source < TriggerSource.COUNT; source++) {
+                int index = bucket * TriggerSource.COUNT + source;
+
+                if (counts[index] > 0) {
+                    stringBuilder.append(':').append(source)
+                            .append(',').append(counts[index])
+                            .append(',').append(wastedCounts[index])
+                            .append(',').append(costs[index]);
+                }
+            }
+
+            if (stringBuilder.indexOf(":", length) < 0) {
+                stringBuilder.setLength(length);
+            }
+        }
+
+        return stringBuilder.toString();
+    }
+
+    //Fills the totals for the last window hours, indexed by trigger source. Returns the hours covered
+    public static synchronized double getTotals(int window, int[] totalCounts, int[] totalWastedCounts, long[] totalCosts) {
+        long now = SystemClock.elapsedRealtime();
+        long currentBucketNumber = now / BUCKET_DURATION;
+
+        for (int source = 0; source < TriggerSource.COUNT; source++) {
+            totalCounts[source] = 0;
+            totalWastedCounts[source] = 0;
+            totalCosts[source] = 0;
+        }
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (bucketNumbers[bucket] > currentBucketNumber - window && bucketNumbers[bucket] <= currentBucketNumber) {
+                for (int source = 0; source < TriggerSource.COUNT; source++) {
+                    int index = bucket * TriggerSource.COUNT + source;
+
+                    totalCounts[source] += counts[index];
+                    totalWastedCounts[source] += wastedCounts[index];
+                    totalCosts[source] += costs[index];
+                }
+            }
+        }
+
+        //The current bucket is only partly over
+        return Math.max(1. / 60, Math.min((window - 1) * BUCKET_DURATION + now % BUCKET_DURATION, now - startedAt) / (double) BUCKET_DURATION);
+    }
+
+    //An upper bound in microseconds, within a factor of two
+    public static synchronized long getLatencyPercentile(double percentile) {
+        long total = 0;
+
+        for (long count : latencies) {
+            total += count;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+
+        for (int i = 0; i < latencies.length; i++) {
+            seen += latencies[i];
+
+            if (seen >= rank && seen > 0) {
+                return (1L << i) - 1;
+            }
+        }
+
+        return 0;
+    }
+
+    //Sources ordered by the time spent on updates that changed nothing, the first is the one worth optimizing
+    public static String dump() {
+        StringBuilder stringBuilder = new StringBuilder();
+        int[] totalCounts = new int[TriggerSource.COUNT];
+        int[] totalWastedCounts = new int[TriggerSource.COUNT];
+        long[] totalCosts = new long[TriggerSource.COUNT];
+        Integer[] sources = new Integer[TriggerSource.COUNT];
+
+        for (int window : new int[]{WINDOW_HOUR, WINDOW_DAY}) {
+            double hours = getTotals(window, totalCounts, totalWastedCounts, totalCosts);
+
+            for (int source = 0; source < TriggerSource.COUNT; source++) {
+                sources[source] = source;
+            }
+
+            Arrays.sort(sources, (a, b) -> Double.compare(
+                    getWastedCost(totalCounts[b], totalWastedCounts[b], totalCosts[b]),
+                    getWastedCost(totalCounts[a], totalWastedCounts[a], totalCosts[a])));
+
+            stringBuilder.append(String.format(Locale.US, "Last %dh (%.1fh covered): source count/h wasted cost\n", window, hours));
+
+            for (int source : sources) {
+                if (totalCounts[source] > 0) {
+                    stringBuilder.append(String.format(Locale.US, "%s %d %.1f/h %d%% %.1fms\n",
+                            TriggerSource.getName(source),
+                            totalCounts[source],
+                            totalCounts[source] / hours,
+                            totalWastedCounts[source] * 100 / totalCounts[source],
+                            totalCosts[source] / 1e6));
+                }
+            }
+
+            stringBuilder.append('\n');
+        }
+
+        return stringBuilder.toString();
+    }
+
+    private static double getWastedCost(int count, int wastedCount, long cost) {
+        return count == 0 ? 0 : (double) cost * wastedCount / count;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.util;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.charge.CapacitySink;
+
+//Immutable reading of the battery state. Only the requested fields are read, the rest keep their defaults
+public class BatterySample {
+    public final static int FIELD_LEVEL = 1;
+    public final static int FIELD_TEMPERATURE = 1 << 1;
+    public final static int FIELD_VOLTAGE = 1 << 2;
+    public final static int FIELD_HEALTH = 1 << 3;
+    public final static int FIELD_STATUS = 1 << 4;
+    public final static int FIELD_PLUGGED = 1 << 5;
+    public final static int FIELD_AMPERAGE = 1 << 6;
+    public final static int FIELD_TIME_REMAINING = 1 << 7;
+    public final static int FIELD_CAPACITY = 1 << 8;
+
+    public final int fields;
+    public final long elapsedRealtime;
+    public final int level;
+    public final int temperature;
+    public final int voltage;
+    public final int health;
+    public final int status;
+    public final int plugged;
+    public final int amperage;
+    public final long timeRemaining;
+    public final int capacity;
+
+    private BatterySample(Context context, BatterySnapshot snapshot, int fields) {
+        this.fields = fields;
+        this.elapsedRealtime = SystemClock.elapsedRealtime();
+        this.level = (fields & FIELD_LEVEL) != 0 ? snapshot.level : -1;
+        this.temperature = (fields & FIELD_TEMPERATURE) != 0 ? snapshot.temperature : -1;
+        this.voltage = (fields & FIELD_VOLTAGE) != 0 ? snapshot.voltage : -1;
+        this.health = (fields & FIELD_HEALTH) != 0 ? snapshot.health : -1;
+        this.status = (fields & FIELD_STATUS) != 0 ? snapshot.status : -1;
+        this.plugged = (fields & FIELD_PLUGGED) != 0 ? snapshot.plugged : 0;
+        this.amperage = (fields & FIELD_AMPERAGE) != 0 ? BatteryUtils.getCurrentNow(context) : 0;
+        this.timeRemaining = (fields & FIELD_TIME_REMAINING) != 0 ? BatteryUtils.getTimeRemaining(context, snapshot) : -1;
+        this.capacity = (fields & FIELD_CAPACITY) != 0 ? CapacitySink.getCapacityEstimator(context).getCapacity() : -1;
+    }
+
+    public static BatterySample read(Context context, BatterySnapshot snapshot, int fields) {
+        return new BatterySample(context, snapshot, fields);
+    }
+
+    public boolean has(int requiredFields) {
+        return (fields & requiredFields) == requiredFields;
+    }
+
+    public boolean isCharging() {
+        return status == BatteryManager.BATTERY_STATUS_CHARGING;
+    }
+}
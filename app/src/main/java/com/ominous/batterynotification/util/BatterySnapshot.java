@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.util;
+
+import android.content.Intent;
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+//The values of one ACTION_BATTERY_CHANGED broadcast. Immutable, so it can be shared across threads
+public class BatterySnapshot {
+    public final long elapsedRealtime;
+    public final int level;
+    public final int temperature;
+    public final int voltage;
+    public final int health;
+    public final int status;
+    public final int plugged;
+
+    private BatterySnapshot(Intent intent) {
+        this(SystemClock.elapsedRealtime(),
+                BatteryUtils.getLevel(intent),
+                BatteryUtils.getTemperature(intent),
+                BatteryUtils.getVoltage(intent),
+                BatteryUtils.getHealth(intent),
+                BatteryUtils.getStatus(intent),
+                BatteryUtils.getPlugged(intent));
+    }
+
+    @VisibleForTesting
+    public BatterySnapshot(long elapsedRealtime, int level, int temperature, int voltage, int health, int status, int plugged) {
+        this.elapsedRealtime = elapsedRealtime;
+        this.level = level;
+        this.temperature = temperature;
+        this.voltage = voltage;
+        this.health = health;
+        this.status = status;
+        this.plugged = plugged;
+    }
+
+    public static BatterySnapshot read(Intent intent) {
+        return new BatterySnapshot(intent);
+    }
+}
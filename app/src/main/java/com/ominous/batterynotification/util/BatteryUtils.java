@@ -29,6 +29,8 @@ import android.os.Parcel;
 import android.os.SystemClock;
 
 import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.charge.ChargeCurveSink;
+import com.ominous.batterynotification.charge.ChargeCurves;
 
 import java.lang.reflect.Field;
 
@@ -36,25 +38,35 @@ import androidx.annotation.NonNull;
 
 class BatteryUtils {
     @NonNull
-    static String getTemperature(Context context, Intent intent, boolean useFahrenheit) {
-        double temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, -1) / 10.;
+    static String getTemperature(Context context, int temperatureTenths, boolean useFahrenheit) {
+        double temperature = temperatureTenths / 10.;
 
         return context.getString(
                 useFahrenheit ? R.string.format_temperature_f : R.string.format_temperature_c,
                 useFahrenheit ? temperature / 5 * 9 + 32 : temperature);
     }
 
+    static int getTemperature(Intent intent) {
+        return intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, -1);
+    }
+
     static int getLevel(Intent intent) {
         return intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1) * 100 / intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
     }
 
-    @NonNull
-    static String getAmperage(Context context) {
+    static int getCurrentNow(Context context) {
         if (Build.VERSION.SDK_INT >= 21) {
             BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
 
-            int batteryCurrent = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+            return batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+        } else {
+            return 0;
+        }
+    }
 
+    @NonNull
+    static String getAmperage(Context context, int batteryCurrent) {
+        if (Build.VERSION.SDK_INT >= 21) {
             return Math.abs(batteryCurrent) > 1000000 ?
                     context.getString(R.string.format_amperage_a, batteryCurrent / 1000000.) :
                     (Math.abs(batteryCurrent) > 1000 ?
@@ -66,10 +78,12 @@ class BatteryUtils {
         }
     }
 
-    @NonNull
-    static String getHealth(Context context, Intent intent) {
-        int health = intent.getIntExtra(BatteryManager.EXTRA_HEALTH, -1);
+    static int getHealth(Intent intent) {
+        return intent.getIntExtra(BatteryManager.EXTRA_HEALTH, -1);
+    }
 
+    @NonNull
+    static String getHealth(Context context, int health) {
         return switch (health) {
             case BatteryManager.BATTERY_HEALTH_COLD -> context.getString(R.string.health_cold);
             case BatteryManager.BATTERY_HEALTH_DEAD -> context.getString(R.string.health_dead);
@@ -84,23 +98,44 @@ class BatteryUtils {
         };
     }
 
-    @NonNull
-    static String getVoltage(Context context, Intent intent) {
-        int voltage = intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1);
+    static int getVoltage(Intent intent) {
+        return intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, -1);
+    }
 
+    @NonNull
+    static String getVoltage(Context context, int voltage) {
         return context.getString(R.string.format_voltage,
                 voltage > 1000 ?
                         voltage / 1000. :
                         voltage);
     }
 
-    static boolean isCharging(Intent intent) {
-        return intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1) == BatteryManager.BATTERY_STATUS_CHARGING;
+    static int getStatus(Intent intent) {
+        return intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+    }
+
+    static int getPlugged(Intent intent) {
+        return intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+    }
+
+    static long getTimeRemaining(Context context, BatterySnapshot snapshot) {
+        if (snapshot.status == BatteryManager.BATTERY_STATUS_CHARGING) {
+            //Learned per charger, since charging slows down a lot toward full
+            ChargeCurves chargeCurves = ChargeCurveSink.peekChargeCurves();
+            long timeToFull = chargeCurves == null ?
+                    ChargeCurves.UNKNOWN :
+                    chargeCurves.getTimeToFull(SystemClock.elapsedRealtime(), snapshot.level, snapshot.plugged);
+
+            return timeToFull == ChargeCurves.UNKNOWN ? -1 : timeToFull / 1000;
+        } else if (snapshot.status == BatteryManager.BATTERY_STATUS_DISCHARGING) {
+            return getBatteryTimeRemaining(context);
+        } else {
+            return -1;
+        }
     }
 
     @SuppressLint("PrivateApi")
-    @NonNull
-    static String getTimeRemaining(Context context, Intent intent) {
+    private static long getBatteryTimeRemaining(Context context) {
         if (Build.VERSION.SDK_INT >= 28) {
             try {
                 //Somehow Android made things easier instead of harder
@@ -116,17 +151,9 @@ class BatteryUtils {
                             .getClass()
                             .getMethod("computeBatteryTimeRemaining")
                             .invoke(batteryStats);
-                    Long chargeTimeRemaining = (Long) batteryStats
-                            .getClass()
-                            .getMethod("computeChargeTimeRemaining")
-                            .invoke(batteryStats);
 
-                    if (intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1) == BatteryManager.BATTERY_STATUS_DISCHARGING
-                            && batteryTimeRemaining != null) {
-                        return computeTimeString(context, (int) (batteryTimeRemaining / 1000));
-                    } else if (intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1) == BatteryManager.BATTERY_STATUS_CHARGING
-                            && chargeTimeRemaining != null) {
-                        return computeTimeString(context, (int) (chargeTimeRemaining / 1000));
+                    if (batteryTimeRemaining != null) {
+                        return batteryTimeRemaining / 1000;
                     }
                 }
             } catch (Exception e) {
@@ -176,17 +203,9 @@ class BatteryUtils {
                                         .getClass()
                                         .getMethod("computeBatteryTimeRemaining", long.class)
                                         .invoke(batteryStats, now);
-                                Long chargeTimeRemaining = (Long) batteryStats
-                                        .getClass()
-                                        .getMethod("computeChargeTimeRemaining", long.class)
-                                        .invoke(batteryStats, now);
 
-                                if (intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1) == BatteryManager.BATTERY_STATUS_DISCHARGING
-                                        && batteryTimeRemaining != null) {
-                                    return computeTimeString(context, (int) (batteryTimeRemaining / 1000000));
-                                } else if (intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1) == BatteryManager.BATTERY_STATUS_CHARGING
-                                        && chargeTimeRemaining != null) {
-                                    return computeTimeString(context, (int) (chargeTimeRemaining / 1000000));
+                                if (batteryTimeRemaining != null) {
+                                    return batteryTimeRemaining / 1000000;
                                 }
                             }
                         }
@@ -198,18 +217,18 @@ class BatteryUtils {
             }
         }
 
-        return "";
+        return -1;
     }
 
     @NonNull
-    private static String computeTimeString(Context context, int secsRemaining) {
+    static String getTimeRemaining(Context context, long secsRemaining) {
         if (secsRemaining < 1) {
             return "";
         }
 
-        int min  = (secsRemaining / 60) % 60;
-        int hour = (secsRemaining / (60 * 60)) % 24;
-        int day  = (secsRemaining / (60 * 60 * 24));
+        int min  = (int) ((secsRemaining / 60) % 60);
+        int hour = (int) ((secsRemaining / (60 * 60)) % 24);
+        int day  = (int) (secsRemaining / (60 * 60 * 24));
 
         if (day > 0) {
             return context.getString(R.string.format_time_remaining_days, day, hour, min);
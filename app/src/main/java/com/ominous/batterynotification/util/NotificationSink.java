@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.util;
+
+import android.content.Context;
+
+import com.ominous.batterynotification.bus.BatterySampleSink;
+import com.ominous.batterynotification.receiver.ScreenStateReceiver;
+import com.ominous.batterynotification.trace.TraceRecorder;
+
+public class NotificationSink implements BatterySampleSink {
+    @Override
+    public int getFields(Context context) {
+        return ScreenStateReceiver.isPaused() ? 0 : NotificationUtils.getNotificationFields(context);
+    }
+
+    @Override
+    public void onSample(Context context, BatterySample sample) {
+        if (ScreenStateReceiver.isPaused()) {
+            ScreenStateReceiver.onRefreshSkipped();
+            TraceRecorder.mark(TraceRecorder.EVENT_SKIPPED, TraceRecorder.getCurrentSource());
+        } else {
+            NotificationUtils.postBatteryNotification(context, sample);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.util;
+
+import android.content.Context;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.charge.CapacityEstimator;
+import com.ominous.batterynotification.charge.CapacitySink;
+
+import java.util.ArrayList;
+
+//A notification line like "{level}% • {temp}[ • {time}]", compiled once into a flat list of ops.
+//Text in [brackets] is dropped when a field inside it is empty, and \ escapes the next character.
+//fields is the union of sample fields the template reads, so nothing else is ever queried
+public class NotificationTemplate {
+    private final static int OP_LITERAL = 0, OP_FIELD = 1, OP_GROUP_START = 2, OP_GROUP_END = 3;
+    private final static int LEVEL = 0, TEMPERATURE = 1, CURRENT = 2, VOLTAGE = 3, POWER = 4, HEALTH = 5, TIME_REMAINING = 6, CAPACITY = 7;
+    private final static String[] FIELD_NAMES = {"level", "temp", "current", "voltage", "power", "health", "time", "capacity"};
+    private final static int[] FIELD_MASKS = {
+            BatterySample.FIELD_LEVEL,
+            BatterySample.FIELD_TEMPERATURE,
+            BatterySample.FIELD_AMPERAGE,
+            BatterySample.FIELD_VOLTAGE,
+            BatterySample.FIELD_VOLTAGE | BatterySample.FIELD_AMPERAGE,
+            BatterySample.FIELD_HEALTH,
+            BatterySample.FIELD_TIME_REMAINING,
+            BatterySample.FIELD_CAPACITY};
+
+    public final String source;
+    public final int fields;
+    //Pairs of op and argument. A literal's argument indexes literals, a group start's is the index of its end
+    private final int[] ops;
+    private final String[] literals;
+    private final StringBuilder buffer = new StringBuilder();
+    private final int[] groupEnds, groupMarks;
+
+    private NotificationTemplate(String source, int fields, int[] ops, String[] literals) {
+        this.source = source;
+        this.fields = fields;
+        this.ops = ops;
+        this.literals = literals;
+
+        groupEnds = new int[ops.length / 2 + 1];
+        groupMarks = new int[ops.length / 2 + 1];
+    }
+
+    public static NotificationTemplate compile(String source) throws IllegalArgumentException {
+        ArrayList<String> literals = new ArrayList<>();
+        int[] ops = new int[source.length() * 2 + 2];
+        int[] groupStarts = new int[source.length() + 1];
+        int opCount = 0, groupDepth = 0, fields = 0;
+        StringBuilder literal = new StringBuilder();
+
+        for (int i = 0, length = source.length(); i <= length; i++) {
+            char c = i < length ? source.charAt(i) : 0;
+
+            if (i < length && c == '\\') {
+                if (++i == length) {
+                    throw new IllegalArgumentException("Dangling escape");
+                }
+
+                literal.append(source.charAt(i));
+                continue;
+            } else if (i < length && c != '{' && c != '[' && c != ']') {
+                if (c == '}') {
+                    throw new IllegalArgumentException("Unexpected } at " + i);
+                }
+
+                literal.append(c);
+                continue;
+            }
+
+            if (literal.length() > 0) {
+                ops[opCount++] = OP_LITERAL;
+                ops[opCount++] = literals.size();
+                literals.add(literal.toString());
+                literal.setLength(0);
+            }
+
+            if (i == length) {
+                break;
+            } else if (c == '{') {
+                int end = source.indexOf('}', i);
+
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed { at " + i);
+                }
+
+                int field = indexOf(FIELD_NAMES, source.substring(i + 1, end));
+
+                if (field < 0) {
+                    throw new IllegalArgumentException("Unknown field " + source.substring(i, end + 1));
+                }
+
+                ops[opCount++] = OP_FIELD;
+                ops[opCount++] = field;
+                fields |= FIELD_MASKS[field];
+                i = end;
+            } else if (c == '[') {
+                groupStarts[groupDepth++] = opCount;
+                ops[opCount++] = OP_GROUP_START;
+                ops[opCount++] = -1;
+            } else {
+                if (groupDepth == 0) {
+                    throw new IllegalArgumentException("Unexpected ] at " + i);
+                }
+
+                ops[groupStarts[--groupDepth] + 1] = opCount;
+                ops[opCount++] = OP_GROUP_END;
+                ops[opCount++] = 0;
+            }
+        }
+
+        if (groupDepth > 0) {
+            throw new IllegalArgumentException("Unclosed [");
+        }
+
+        int[] compiledOps = new int[opCount];
+        System.arraycopy(ops, 0, compiledOps, 0, opCount);
+
+        return new NotificationTemplate(source, fields, compiledOps, literals.toArray(new String[0]));
+    }
+
+    public synchronized String render(Context context, BatterySample sample, boolean useFahrenheit) {
+        int groupDepth = 0;
+
+        buffer.setLength(0);
+
+        for (int i = 0; i < ops.length; i += 2) {
+            switch (ops[i]) {
+                case OP_LITERAL -> buffer.append(literals[ops[i + 1]]);
+                case OP_GROUP_START -> {
+                    groupEnds[groupDepth] = ops[i + 1];
+                    groupMarks[groupDepth++] = buffer.length();
+                }
+                case OP_GROUP_END -> groupDepth--;
+                default -> {
+                    int length = buffer.length();
+
+                    appendField(context, sample, ops[i + 1], useFahrenheit);
+
+                    //An empty field drops its innermost group
+                    if (buffer.length() == length && groupDepth > 0) {
+                        buffer.setLength(groupMarks[--groupDepth]);
+                        i = groupEnds[groupDepth];
+                    }
+                }
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    private void appendField(Context context, BatterySample sample, int field, boolean useFahrenheit) {
+        if (!sample.has(FIELD_MASKS[field])) {
+            return;
+        }
+
+        switch (field) {
+            case LEVEL -> buffer.append(sample.level);
+            case TEMPERATURE -> buffer.append(BatteryUtils.getTemperature(context, sample.temperature, useFahrenheit));
+            case CURRENT -> buffer.append(BatteryUtils.getAmperage(context, sample.amperage));
+            case VOLTAGE -> buffer.append(BatteryUtils.getVoltage(context, sample.voltage));
+            case POWER -> {
+                if (sample.amperage != 0) {
+                    //mV * µA
+                    buffer.append(context.getString(R.string.format_power, Math.abs((double) sample.voltage * sample.amperage) / 1e9));
+                }
+            }
+            case HEALTH -> buffer.append(BatteryUtils.getHealth(context, sample.health));
+            case TIME_REMAINING -> buffer.append(BatteryUtils.getTimeRemaining(context, sample.timeRemaining));
+            case CAPACITY -> {
+                int health = CapacitySink.getHealth(context, sample.capacity);
+
+                //Falls back to mAh when the design capacity is unknown
+                if (health != CapacityEstimator.UNKNOWN) {
+                    buffer.append(context.getString(R.string.format_percent, health));
+                } else if (sample.capacity != CapacityEstimator.UNKNOWN) {
+                    buffer.append(context.getString(R.string.format_capacity, sample.capacity));
+                }
+            }
+        }
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
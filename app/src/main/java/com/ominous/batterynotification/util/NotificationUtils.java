@@ -26,7 +26,6 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
@@ -34,9 +33,17 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
 import android.os.Build;
+import android.os.SystemClock;
+import android.widget.RemoteViews;
 
 import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.alert.AlertEngine;
+import com.ominous.batterynotification.bus.BatterySampleBus;
+import com.ominous.batterynotification.monitor.MonitorPreferences;
 import com.ominous.batterynotification.service.BatteryService;
+import com.ominous.batterynotification.trace.TraceRecorder;
+import com.ominous.batterynotification.trace.TriggerSource;
+import com.ominous.batterynotification.trace.TriggerStats;
 import com.ominous.batterynotification.work.BatteryWorkManager;
 
 import androidx.core.content.ContextCompat;
@@ -44,47 +51,100 @@ import androidx.vectordrawable.graphics.drawable.VectorDrawableCompat;
 
 public class NotificationUtils {
     public final static int NOTIFICATION_ID = 12345;
+    private final static int ALERT_NOTIFICATION_ID = 12346;
     public final static int FLAG_IMMUTABLE = Build.VERSION.SDK_INT >= 23 ? PendingIntent.FLAG_IMMUTABLE : 0;
-    private static final IntentFilter batteryIntentFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
 
-    public static Notification makeBatteryNotification(Context context, Intent intent) {
-        NotificationManager notificationManager = ContextCompat.getSystemService(context, NotificationManager.class);
+    private static NotificationTemplate titleTemplate, contentTemplate;
+    private static long templateHits, templateCompiles;
+    private static volatile boolean isWaitingForBoot = false;
+    //What the last built and the last posted notification show, to tell which updates changed nothing
+    private static int builtVisibleHash, postedVisibleHash;
+
+    //Level and status are always needed for the icon and color, everything else only if a template
+    //or the history chart shows it
+    public static int getNotificationFields(Context context) {
+        SharedPreferences sharedPreferences = StorageUtils.getPreferences(context);
+        int fields = BatterySample.FIELD_LEVEL | BatterySample.FIELD_STATUS |
+                getTitleTemplate(context, sharedPreferences).fields | getContentTemplate(context, sharedPreferences).fields;
+
+        if (Build.VERSION.SDK_INT >= 24 && sharedPreferences.getBoolean(context.getString(R.string.preference_sparkline), false)) {
+            fields |= BatterySample.FIELD_LEVEL | BatterySample.FIELD_TEMPERATURE;
+        }
 
-        if (Build.VERSION.SDK_INT >= 26 &&
-                notificationManager != null &&
-                notificationManager.getNotificationChannel(context.getString(R.string.app_name)) == null) {
-            createNotificationChannel(context);
+        if (Build.VERSION.SDK_INT < 21) {
+            fields &= ~(BatterySample.FIELD_AMPERAGE | BatterySample.FIELD_TIME_REMAINING);
+        } else if (!sharedPreferences.getBoolean(context.getString(R.string.preference_time_remaining), false)) {
+            fields &= ~BatterySample.FIELD_TIME_REMAINING;
         }
 
-        SharedPreferences sharedPreferences = context.getSharedPreferences(context.getString(R.string.preference_filename), Context.MODE_PRIVATE);
-        String spacer = context.getString(R.string.notification_spacer);
+        return fields;
+    }
 
-        int level = BatteryUtils.getLevel(intent);
-        int batteryIconRes = BatteryUtils.isCharging(intent) ? R.drawable.ic_battery_charging_full_white_24dp : R.drawable.ic_battery_full_white_24dp;
-        String timeRemaining = sharedPreferences.getBoolean(context.getString(R.string.preference_time_remaining), false) ? BatteryUtils.getTimeRemaining(context, intent) : "";
+    private static synchronized NotificationTemplate getTitleTemplate(Context context, SharedPreferences sharedPreferences) {
+        String source = sharedPreferences.getString(context.getString(R.string.preference_title_template), context.getString(R.string.default_title_template));
 
-        StringBuilder notificationTitleBuilder = new StringBuilder(context.getString(R.string.format_percent, level))
-                .append(spacer)
-                .append(BatteryUtils.getTemperature(context, intent, sharedPreferences.getBoolean(context.getString(R.string.preference_fahrenheit), false)));
+        if (titleTemplate == null || !titleTemplate.source.equals(source)) {
+            titleTemplate = compileTemplate(source, context.getString(R.string.default_title_template));
+        } else {
+            templateHits++;
+        }
 
-        if (!timeRemaining.isEmpty()) {
-            notificationTitleBuilder
-                    .append(spacer)
-                    .append(timeRemaining);
+        return titleTemplate;
+    }
+
+    private static synchronized NotificationTemplate getContentTemplate(Context context, SharedPreferences sharedPreferences) {
+        String source = sharedPreferences.getString(context.getString(R.string.preference_content_template), context.getString(R.string.default_content_template));
+
+        if (contentTemplate == null || !contentTemplate.source.equals(source)) {
+            contentTemplate = compileTemplate(source, context.getString(R.string.default_content_template));
+        } else {
+            templateHits++;
         }
 
-        StringBuilder notificationContentBuilder = new StringBuilder();
+        return contentTemplate;
+    }
 
-        if (Build.VERSION.SDK_INT >= 21) {
-            notificationContentBuilder
-                    .append(BatteryUtils.getAmperage(context))
-                    .append(spacer);
+    private static NotificationTemplate compileTemplate(String source, String defaultSource) {
+        templateCompiles++;
+
+        try {
+            return NotificationTemplate.compile(source);
+        } catch (IllegalArgumentException e) {
+            //Settings rejects invalid templates, so this only happens to hand edited preferences
+            return NotificationTemplate.compile(defaultSource);
         }
+    }
 
-        notificationContentBuilder
-                .append(BatteryUtils.getVoltage(context, intent))
-                .append(spacer)
-                .append(BatteryUtils.getHealth(context, intent));
+    public static synchronized long getTemplateHits() {
+        return templateHits;
+    }
+
+    public static synchronized long getTemplateCompiles() {
+        return templateCompiles;
+    }
+
+    public static Notification makeBatteryNotification(Context context, BatterySnapshot snapshot) {
+        return makeBatteryNotification(context, BatterySample.read(context, snapshot, getNotificationFields(context)));
+    }
+
+    public static Notification makeBatteryNotification(Context context, BatterySample sample) {
+        NotificationManager notificationManager = ContextCompat.getSystemService(context, NotificationManager.class);
+
+        if (Build.VERSION.SDK_INT >= 26 &&
+                notificationManager != null &&
+                notificationManager.getNotificationChannel(context.getString(R.string.app_name)) == null) {
+            createNotificationChannel(context);
+        }
+
+        SharedPreferences sharedPreferences = StorageUtils.getPreferences(context);
+        boolean useFahrenheit = sharedPreferences.getBoolean(context.getString(R.string.preference_fahrenheit), false);
+
+        int level = sample.level;
+        int batteryIconRes = sample.isCharging() ? R.drawable.ic_battery_charging_full_white_24dp : R.drawable.ic_battery_full_white_24dp;
+        String notificationTitle = getTitleTemplate(context, sharedPreferences).render(context, sample, useFahrenheit);
+        String notificationContent = getContentTemplate(context, sharedPreferences).render(context, sample, useFahrenheit);
+
+        builtVisibleHash = ((notificationTitle.hashCode() * 31 + notificationContent.hashCode()) * 31 + batteryIconRes) * 31 + level;
 
         Notification.Builder notificationBuilder;
 
@@ -99,8 +159,21 @@ public class NotificationUtils {
                 .setContentIntent(PendingIntent.getActivity(context, 0, new Intent(Intent.ACTION_POWER_USAGE_SUMMARY), FLAG_IMMUTABLE))
                 .setOngoing(true)
                 .setShowWhen(false)
-                .setContentTitle(notificationTitleBuilder.toString())
-                .setContentText(notificationContentBuilder.toString());
+                .setContentTitle(notificationTitle)
+                .setContentText(notificationContent);
+
+        if (Build.VERSION.SDK_INT >= 24 &&
+                sharedPreferences.getBoolean(context.getString(R.string.preference_sparkline), false)) {
+            RemoteViews sparklineViews = new RemoteViews(context.getPackageName(), R.layout.notification_sparkline);
+            sparklineViews.setTextViewText(R.id.sparkline_title, notificationTitle);
+            sparklineViews.setTextViewText(R.id.sparkline_text, notificationContent);
+            sparklineViews.setImageViewBitmap(R.id.sparkline, SparklineRenderer.draw(context, sample));
+            builtVisibleHash = builtVisibleHash * 31 + SparklineRenderer.getVersion();
+
+            notificationBuilder
+                    .setStyle(new Notification.DecoratedCustomViewStyle())
+                    .setCustomBigContentView(sparklineViews);
+        }
 
         if (Build.VERSION.SDK_INT >= 31 &&
                 sharedPreferences.getBoolean(context.getString(R.string.preference_immediate), false)) {
@@ -130,26 +203,47 @@ public class NotificationUtils {
         return notificationBuilder.build();
     }
 
-    public static void startBatteryNotification(Context context) {
-        updateBatteryNotification(context);
+    public static void startBatteryNotification(Context context, int source) {
+        if (source == TriggerSource.BOOT) {
+            isWaitingForBoot = true;
+        }
+
+        updateBatteryNotification(context, source);
 
-        BatteryWorkManager.setRepeatingAlarm(context);
+        BatteryWorkManager.getUpdatePolicy().start(BatteryWorkManager.getScheduler(context));
     }
 
-    public static void updateBatteryNotification(Context context) {
-        updateBatteryNotification(context, context.registerReceiver(null, batteryIntentFilter));
+    public static void updateBatteryNotification(Context context, int source) {
+        BatterySampleBus.publish(context, source);
     }
 
-    public static void updateBatteryNotification(Context context, Intent intent) {
+    public static void postBatteryNotification(Context context, BatterySample sample) {
         NotificationManager notificationManager = ContextCompat.getSystemService(context, NotificationManager.class);
 
         if (notificationManager != null) {
-            notificationManager.notify(NOTIFICATION_ID, makeBatteryNotification(context, intent));
+            long start = TraceRecorder.begin(TraceRecorder.EVENT_NOTIFY);
+            notificationManager.notify(NOTIFICATION_ID, makeBatteryNotification(context, sample));
+            TraceRecorder.end(TraceRecorder.EVENT_NOTIFY, start);
+
+            if (builtVisibleHash != postedVisibleHash) {
+                postedVisibleHash = builtVisibleHash;
+                TriggerStats.onVisibleChange();
+            }
+
+            if (isWaitingForBoot) {
+                isWaitingForBoot = false;
+
+                //Time from boot to the first notification, kept for the trace log and in release builds
+                MonitorPreferences.getMonitorState(context).edit()
+                        .putLong(context.getString(R.string.preference_boot_to_notification), SystemClock.elapsedRealtime())
+                        .apply();
+                TraceRecorder.markSinceBoot(TraceRecorder.EVENT_BOOT_TO_NOTIFY, TriggerSource.BOOT);
+            }
         }
     }
 
     public static void cancelBatteryNotification(Context context) {
-        BatteryWorkManager.stopRepeatingAlarm(context);
+        BatteryWorkManager.getUpdatePolicy().stop(BatteryWorkManager.getScheduler(context));
         context.stopService(new Intent(context, BatteryService.class));
 
         NotificationManager notificationManager = ContextCompat.getSystemService(context, NotificationManager.class);
@@ -159,6 +253,59 @@ public class NotificationUtils {
         }
     }
 
+    public static void postAlertNotification(Context context, int alert, BatterySample sample) {
+        NotificationManager notificationManager = ContextCompat.getSystemService(context, NotificationManager.class);
+
+        if (notificationManager == null) {
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= 26 &&
+                notificationManager.getNotificationChannel(context.getString(R.string.notification_channel_alerts)) == null) {
+            createAlertNotificationChannel(context);
+        }
+
+        String title = switch (alert) {
+            case AlertEngine.ALERT_HIGH_TEMPERATURE -> context.getString(R.string.alert_high_temperature,
+                    BatteryUtils.getTemperature(context, sample.temperature, StorageUtils.getPreferences(context)
+                            .getBoolean(context.getString(R.string.preference_fahrenheit), false)));
+            case AlertEngine.ALERT_CHARGED -> context.getString(R.string.alert_charged, sample.level);
+            case AlertEngine.ALERT_LOW -> context.getString(R.string.alert_low, sample.level);
+            case AlertEngine.ALERT_DRAIN -> context.getString(R.string.alert_drain, sample.level);
+            default -> context.getString(R.string.alert_health, BatteryUtils.getHealth(context, sample.health));
+        };
+
+        Notification.Builder notificationBuilder;
+
+        if (Build.VERSION.SDK_INT >= 26) {
+            notificationBuilder = new Notification.Builder(context, context.getString(R.string.notification_channel_alerts));
+        } else {
+            notificationBuilder = new Notification.Builder(context)
+                    .setPriority(Notification.PRIORITY_HIGH);
+        }
+
+        notificationBuilder
+                .setContentIntent(PendingIntent.getActivity(context, 0, new Intent(Intent.ACTION_POWER_USAGE_SUMMARY), FLAG_IMMUTABLE))
+                .setAutoCancel(true)
+                .setContentTitle(title)
+                .setSmallIcon(sample.isCharging() ? R.drawable.ic_battery_charging_full_white_24dp : R.drawable.ic_battery_full_white_24dp);
+
+        notificationManager.notify(ALERT_NOTIFICATION_ID + alert, notificationBuilder.build());
+    }
+
+    private static void createAlertNotificationChannel(Context context) {
+        if (Build.VERSION.SDK_INT >= 26) {
+            NotificationChannel notificationChannel = new NotificationChannel(context.getString(R.string.notification_channel_alerts), context.getString(R.string.notification_channel_alerts_name), NotificationManager.IMPORTANCE_HIGH);
+            notificationChannel.setDescription(context.getString(R.string.notification_channel_alerts_description));
+
+            NotificationManager notificationManager = ContextCompat.getSystemService(context, NotificationManager.class);
+
+            if (notificationManager != null) {
+                notificationManager.createNotificationChannel(notificationChannel);
+            }
+        }
+    }
+
     private static void createNotificationChannel(Context context) {
         if (Build.VERSION.SDK_INT >= 26) {
             NotificationChannel notificationChannel = new NotificationChannel(context.getString(R.string.app_name), context.getString(R.string.app_name), NotificationManager.IMPORTANCE_MIN);
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.util;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.os.SystemClock;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.history.HistoryBucket;
+import com.ominous.batterynotification.history.HistorySeries;
+import com.ominous.batterynotification.history.HistorySink;
+
+import java.io.IOException;
+
+import androidx.core.content.ContextCompat;
+
+//Level and temperature chart for the expanded notification. One column is one time slot, and the
+//chart only ever draws the newest column: older columns are shifted left by blitting the previous
+//bitmap. The whole chart is only redrawn when its size or the theme changes. Memory is fixed at two
+//COLUMNS x height bitmaps plus the values needed to redraw them. The monitor is often killed between
+//alarms, so the values are seeded from the recorded history once per process, off the build path
+class SparklineRenderer {
+    private final static int COLUMNS = 180, HEIGHT_DP = 32;
+    private final static long COLUMN_DURATION = 2 * 60 * 1000;
+    private final static int MIN_TEMPERATURE = 150, MAX_TEMPERATURE = 500;
+
+    private final static float[] levels = new float[COLUMNS];
+    private final static float[] temperatures = new float[COLUMNS];
+    private final static Paint levelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final static Paint temperaturePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final static Canvas canvas = new Canvas();
+
+    private static Bitmap front, back;
+    private static long lastColumn = -1;
+    private static int uiMode = -1;
+    private static boolean isSeeded;
+    private static int version;
+
+    static synchronized Bitmap draw(Context context, BatterySample sample) {
+        float density = context.getResources().getDisplayMetrics().density;
+        int height = Math.round(HEIGHT_DP * density);
+        int newUiMode = context.getResources().getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_MASK;
+        long column = sample.elapsedRealtime / COLUMN_DURATION;
+
+        if (lastColumn < 0 || column < lastColumn || column - lastColumn >= COLUMNS) {
+            for (int i = 0; i < COLUMNS; i++) {
+                levels[i] = Float.NaN;
+                temperatures[i] = Float.NaN;
+            }
+
+            if (lastColumn < 0) {
+                seed(context, column);
+            }
+        } else {
+            for (long c = lastColumn + 1; c < column; c++) {
+                levels[(int) (c % COLUMNS)] = Float.NaN;
+                temperatures[(int) (c % COLUMNS)] = Float.NaN;
+            }
+        }
+
+        //Missing fields leave a gap instead of a line along the edge
+        int index = (int) (column % COLUMNS);
+        float level = sample.has(BatterySample.FIELD_LEVEL) ? sample.level : Float.NaN;
+        float temperature = sample.has(BatterySample.FIELD_TEMPERATURE) ? sample.temperature : Float.NaN;
+        boolean isChanged = column != lastColumn || Float.compare(level, levels[index]) != 0 || Float.compare(temperature, temperatures[index]) != 0;
+
+        levels[index] = level;
+        temperatures[index] = temperature;
+
+        if (front == null || front.getHeight() != height || newUiMode != uiMode || lastColumn < 0 || column < lastColumn || isSeeded) {
+            isChanged = true;
+
+            if (front == null || front.getHeight() != height) {
+                front = Bitmap.createBitmap(COLUMNS, height, Bitmap.Config.ARGB_8888);
+                back = Bitmap.createBitmap(COLUMNS, height, Bitmap.Config.ARGB_8888);
+            }
+
+            uiMode = newUiMode;
+            isSeeded = false;
+            levelPaint.setColor(ContextCompat.getColor(context, R.color.sparkline_level));
+            levelPaint.setStrokeWidth(density);
+            temperaturePaint.setColor(ContextCompat.getColor(context, R.color.sparkline_temperature));
+            temperaturePaint.setStrokeWidth(density);
+
+            front.eraseColor(Color.TRANSPARENT);
+            canvas.setBitmap(front);
+
+            for (long c = column - COLUMNS + 1; c <= column; c++) {
+                drawColumn(c, column, height);
+            }
+        } else if (column > lastColumn) {
+            back.eraseColor(Color.TRANSPARENT);
+            canvas.setBitmap(back);
+            canvas.drawBitmap(front, -(column - lastColumn), 0, null);
+
+            Bitmap swap = front;
+            front = back;
+            back = swap;
+
+            drawColumn(column, column, height);
+        } else {
+            canvas.setBitmap(front);
+            drawColumn(column, column, height);
+        }
+
+        lastColumn = column;
+
+        if (isChanged) {
+            version++;
+        }
+
+        return front;
+    }
+
+    //Changes whenever a draw changed the chart, so the notification can tell a new chart from the same one
+    static synchronized int getVersion() {
+        return version;
+    }
+
+    //Draws run on the notification build path, which can be the main thread, so the history is read on
+    //the history thread and the older columns stay blank until the next draw after it is done. Only the
+    //raw tier is read, which holds a few hundred records for the time the chart covers
+    private static void seed(Context context, long column) {
+        Context applicationContext = context.getApplicationContext();
+
+        HistorySink.getHistoryExecutor().execute(() -> {
+            long now = System.currentTimeMillis();
+            long elapsedRealtime = SystemClock.elapsedRealtime();
+
+            try {
+                HistorySeries series = HistorySink.getHistoryReader(applicationContext).query(now - COLUMNS * COLUMN_DURATION, now, COLUMNS, now);
+
+                synchronized (SparklineRenderer.class) {
+                    for (HistoryBucket bucket : series.buckets) {
+                        long bucketColumn = (elapsedRealtime - (now - bucket.start)) / COLUMN_DURATION;
+
+                        //Columns from the first draw on are live, and the chart may have moved on since
+                        if (bucketColumn > lastColumn - COLUMNS && bucketColumn < column) {
+                            levels[(int) (bucketColumn % COLUMNS)] = bucket.levelMean;
+                            temperatures[(int) (bucketColumn % COLUMNS)] = bucket.temperatureMean;
+                        }
+                    }
+
+                    isSeeded = true;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static void drawColumn(long column, long newestColumn, int height) {
+        if (column < 0) {
+            return;
+        }
+
+        int x = (int) (COLUMNS - 1 - (newestColumn - column));
+        int index = (int) (column % COLUMNS);
+        int previousIndex = (int) ((column + COLUMNS - 1) % COLUMNS);
+
+        canvas.save();
+        canvas.clipRect(x, 0, x + 1, height);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+        drawSegment(levels[previousIndex], levels[index], 0, 100, x, height, levelPaint);
+        drawSegment(temperatures[previousIndex], temperatures[index], MIN_TEMPERATURE, MAX_TEMPERATURE, x, height, temperaturePaint);
+
+        canvas.restore();
+    }
+
+    private static void drawSegment(float previousValue, float value, float min, float max, int x, int height, Paint paint) {
+        if (!Float.isNaN(value)) {
+            float y = toY(value, min, max, height);
+
+            canvas.drawLine(x, Float.isNaN(previousValue) ? y : toY(previousValue, min, max, height), x + 1, y, paint);
+        }
+    }
+
+    private static float toY(float value, float min, float max, int height) {
+        float strokePadding = 1;
+
+        return strokePadding + (height - 2 * strokePadding) * (1 - Math.max(0, Math.min(1, (value - min) / (max - min))));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.UserManager;
+
+import com.ominous.batterynotification.R;
+
+import java.io.File;
+
+import androidx.core.content.ContextCompat;
+
+//Settings, monitor state and history live in device protected storage on 24+, so the monitor can
+//start on LOCKED_BOOT_COMPLETED before the user unlocks. Credential protected storage can only be
+//read after the first unlock, so anything left there from an older version is moved over then
+public class StorageUtils {
+    private final static String HISTORY_DIRECTORY = "history";
+    private static boolean isMigrated = false;
+
+    public static Context getStorageContext(Context context) {
+        if (Build.VERSION.SDK_INT >= 24 && !context.isDeviceProtectedStorage()) {
+            return context.createDeviceProtectedStorageContext();
+        } else {
+            return context;
+        }
+    }
+
+    public static SharedPreferences getPreferences(Context context) {
+        return getStorageContext(context).getSharedPreferences(context.getString(R.string.preference_filename), Context.MODE_PRIVATE);
+    }
+
+    //Reloads the file if another process changed it. Both modes return the same cached instance
+    @SuppressWarnings("deprecation")
+    public static SharedPreferences getMultiProcessPreferences(Context context, int filename) {
+        return getStorageContext(context).getSharedPreferences(context.getString(filename), Context.MODE_MULTI_PROCESS);
+    }
+
+    public static File getFilesDir(Context context) {
+        return getStorageContext(context).getFilesDir();
+    }
+
+    public static File getHistoryDirectory(Context context) {
+        return new File(getFilesDir(context), HISTORY_DIRECTORY);
+    }
+
+    //Returns true if anything was moved, so cached preferences have to be reloaded
+    public static synchronized boolean migrate(Context context) {
+        if (isMigrated || Build.VERSION.SDK_INT < 24) {
+            return false;
+        }
+
+        UserManager userManager = ContextCompat.getSystemService(context, UserManager.class);
+
+        if (userManager != null && !userManager.isUserUnlocked()) {
+            return false;
+        }
+
+        isMigrated = true;
+
+        Context credentialContext = context.isDeviceProtectedStorage() ? context.createCredentialProtectedStorageContext() : context;
+        Context storageContext = getStorageContext(context);
+        boolean isMoved = false;
+
+        for (int filename : new int[]{R.string.preference_filename, R.string.preference_monitor_state_filename}) {
+            String name = context.getString(filename);
+
+            //Moving also succeeds when there is nothing to move, which would force a reload every time
+            if (new File(credentialContext.getDataDir(), "shared_prefs/" + name + ".xml").exists()) {
+                isMoved |= storageContext.moveSharedPreferencesFrom(credentialContext, name);
+            }
+        }
+
+        File oldHistory = new File(credentialContext.getFilesDir(), HISTORY_DIRECTORY);
+        File newHistory = getHistoryDirectory(context);
+
+        if (oldHistory.exists() && !newHistory.exists()) {
+            isMoved |= oldHistory.renameTo(newHistory);
+        }
+
+        return isMoved;
+    }
+}
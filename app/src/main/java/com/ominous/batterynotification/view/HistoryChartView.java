@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.ominous.batterynotification.R;
+import com.ominous.batterynotification.history.DecimatedSeries;
+import com.ominous.batterynotification.history.HistorySink;
+import com.ominous.batterynotification.history.HistoryStore;
+import com.ominous.batterynotification.util.StorageUtils;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+//Level, temperature and current history. Each zoom level is decimated once on the history thread into
+//min/max per pixel column for several screens of history, then panning only slides a window over
+//those columns, so a frame never touches more values than the view is wide
+public class HistoryChartView extends View {
+    private final static long[] ZOOM_SPANS = {
+            6 * HistoryStore.HOUR,
+            HistoryStore.DAY,
+            3 * HistoryStore.DAY,
+            7 * HistoryStore.DAY,
+            28 * HistoryStore.DAY};
+    private final static int PAN_SPANS = 4;
+    private final static long CACHE_LIFETIME = HistoryStore.MINUTE;
+    private final static float ZOOM_STEP = 1.5f;
+    private final static int PANELS = 3;
+
+    private final DecimatedSeries[] cache = new DecimatedSeries[ZOOM_SPANS.length];
+    private final long[] cacheTimes = new long[ZOOM_SPANS.length];
+    private final boolean[] isLoading = new boolean[ZOOM_SPANS.length];
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+    private final Date date = new Date();
+    private final Paint[] panelPaints = new Paint[PANELS];
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final ScaleGestureDetector scaleGestureDetector;
+    private final boolean useFahrenheit;
+    private final GestureDetector gestureDetector;
+    private float[] lines = new float[0];
+    private int zoom = 0;
+    private float panColumns = 0;
+    private float pendingScale = 1;
+
+    public HistoryChartView(Context context) {
+        this(context, null);
+    }
+
+    public HistoryChartView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+
+        int[] panelColors = {R.color.sparkline_level, R.color.sparkline_temperature, R.color.history_current};
+
+        for (int i = 0; i < PANELS; i++) {
+            panelPaints[i] = new Paint();
+            panelPaints[i].setColor(ContextCompat.getColor(context, panelColors[i]));
+            panelPaints[i].setStrokeWidth(1);
+        }
+
+        useFahrenheit = StorageUtils.getPreferences(context)
+                .getBoolean(context.getString(R.string.preference_fahrenheit), false);
+
+        textPaint.setColor(ContextCompat.getColor(context, R.color.history_text));
+        textPaint.setTextSize(context.getResources().getDimension(R.dimen.history_text_size));
+
+        scaleGestureDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(@NonNull ScaleGestureDetector detector) {
+                pendingScale *= detector.getScaleFactor();
+
+                if (pendingScale > ZOOM_STEP && zoom > 0) {
+                    setZoom(zoom - 1);
+                } else if (pendingScale < 1 / ZOOM_STEP && zoom < ZOOM_SPANS.length - 1) {
+                    setZoom(zoom + 1);
+                }
+
+                return true;
+            }
+        });
+
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(@NonNull MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(@Nullable MotionEvent e1, @NonNull MotionEvent e2, float distanceX, float distanceY) {
+                DecimatedSeries series = cache[zoom];
+
+                if (series != null) {
+                    panColumns = Math.max(0, Math.min(panColumns - distanceX, series.columns - getChartWidth()));
+                    invalidate();
+                }
+
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            pendingScale = 1;
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+
+        scaleGestureDetector.onTouchEvent(event);
+
+        return gestureDetector.onTouchEvent(event) || super.onTouchEvent(event);
+    }
+
+    private void setZoom(int newZoom) {
+        //Keep the right edge on the same moment in time
+        panColumns = panColumns * ZOOM_SPANS[zoom] / ZOOM_SPANS[newZoom];
+        zoom = newZoom;
+        pendingScale = 1;
+
+        invalidate();
+    }
+
+    private int getChartWidth() {
+        return getWidth() - getPaddingLeft() - getPaddingRight();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+
+        int width = getChartWidth();
+
+        if (width <= 0) {
+            return;
+        }
+
+        long columnDuration = Math.max(ZOOM_SPANS[zoom] / width, 1);
+        DecimatedSeries series = cache[zoom];
+
+        if (series == null || series.columnDuration != columnDuration) {
+            series = null;
+            load(zoom, width, columnDuration);
+        } else if (SystemClock.elapsedRealtime() - cacheTimes[zoom] > CACHE_LIFETIME) {
+            load(zoom, width, columnDuration);
+        }
+
+        float textHeight = textPaint.getTextSize();
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        float panelHeight = (getHeight() - top - getPaddingBottom() - textHeight * 2) / PANELS;
+
+        if (series == null) {
+            canvas.drawText(getContext().getString(R.string.history_loading), left, top + textHeight, textPaint);
+            return;
+        }
+
+        panColumns = Math.min(panColumns, Math.max(series.columns - width, 0));
+
+        int lastIndex = series.columns - 1 - Math.round(panColumns);
+        int firstIndex = lastIndex - width + 1;
+
+        for (int panel = 0; panel < PANELS; panel++) {
+            float[] minimums = panel == 0 ? series.levelMin : panel == 1 ? series.temperatureMin : series.currentMin;
+            float[] maximums = panel == 0 ? series.levelMax : panel == 1 ? series.temperatureMax : series.currentMax;
+            float panelTop = top + textHeight + panel * panelHeight;
+            float low = panel == 0 ? 0 : Float.MAX_VALUE;
+            float high = panel == 0 ? 100 : -Float.MAX_VALUE;
+
+            if (panel != 0) {
+                for (int i = Math.max(firstIndex, 0); i <= lastIndex; i++) {
+                    if (!Float.isNaN(minimums[i])) {
+                        low = Math.min(low, minimums[i]);
+                        high = Math.max(high, maximums[i]);
+                    }
+                }
+            }
+
+            if (high < low) {
+                continue;
+            }
+
+            float range = Math.max(high - low, 1);
+            float plotTop = panelTop + textHeight;
+            float plotHeight = panelHeight - textHeight * 3 / 2;
+            int lineCount = 0;
+
+            if (lines.length < width * 4) {
+                lines = new float[width * 4];
+            }
+
+            for (int x = 0, i = firstIndex; x < width; x++, i++) {
+                if (i >= 0 && !Float.isNaN(minimums[i])) {
+                    //A one pixel line is drawn even when min and max are equal
+                    lines[lineCount++] = left + x;
+                    lines[lineCount++] = plotTop + plotHeight * (high - maximums[i]) / range;
+                    lines[lineCount++] = left + x;
+                    lines[lineCount++] = plotTop + plotHeight * (high - minimums[i]) / range + 1;
+                }
+            }
+
+            canvas.drawLines(lines, 0, lineCount, panelPaints[panel]);
+            canvas.drawText(getPanelLabel(panel, low, high), left, panelTop + textHeight, textPaint);
+        }
+
+        long lastTime = (series.firstColumn + lastIndex + 1) * series.columnDuration;
+        float bottom = getHeight() - getPaddingBottom();
+
+        date.setTime(lastTime - ZOOM_SPANS[zoom]);
+        canvas.drawText(dateFormat.format(date), left, bottom, textPaint);
+
+        date.setTime(lastTime);
+        String end = dateFormat.format(date);
+        canvas.drawText(end, left + width - textPaint.measureText(end), bottom, textPaint);
+    }
+
+    private String getPanelLabel(int panel, float low, float high) {
+        Context context = getContext();
+
+        return switch (panel) {
+            case 0 -> context.getString(R.string.history_label_level);
+            case 1 -> useFahrenheit ?
+                    context.getString(R.string.history_label_temperature_f, low / 50 * 9 + 32, high / 50 * 9 + 32) :
+                    context.getString(R.string.history_label_temperature_c, low / 10, high / 10);
+            default -> context.getString(R.string.history_label_current, low / 1000, high / 1000);
+        };
+    }
+
+    private void load(int zoomLevel, int width, long columnDuration) {
+        if (isLoading[zoomLevel]) {
+            return;
+        }
+
+        isLoading[zoomLevel] = true;
+
+        Context context = getContext().getApplicationContext();
+
+        HistorySink.getHistoryExecutor().execute(() -> {
+            long now = System.currentTimeMillis();
+            long from = now - ZOOM_SPANS[zoomLevel] * PAN_SPANS;
+            DecimatedSeries series = null;
+
+            try {
+                series = DecimatedSeries.decimate(
+                        HistorySink.getHistoryReader(context).query(from, now, width * PAN_SPANS, now),
+                        from, now, columnDuration);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            DecimatedSeries result = series;
+
+            handler.post(() -> {
+                isLoading[zoomLevel] = false;
+
+                if (result != null) {
+                    //Stay anchored to the same moment while newer columns are appended
+                    DecimatedSeries previous = cache[zoomLevel];
+
+                    if (zoomLevel == zoom && previous != null && previous.columnDuration == result.columnDuration && panColumns > 0) {
+                        panColumns += result.getLastColumn() - previous.getLastColumn();
+                    }
+
+                    cache[zoomLevel] = result;
+                    cacheTimes[zoomLevel] = SystemClock.elapsedRealtime();
+
+                    invalidate();
+                }
+            });
+        });
+    }
+}
@@ -23,6 +23,7 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.os.SystemClock;
 
 import com.ominous.batterynotification.receiver.BatteryBroadcastReceiver;
@@ -30,30 +31,128 @@ import com.ominous.batterynotification.util.NotificationUtils;
 
 import androidx.core.content.ContextCompat;
 
-public class BatteryWorkManager {
-    private final static int ONE_MIN = 60000, REQUEST_CODE = 123;
+//Schedules the update alarms for UpdatePolicy on the device
+public class BatteryWorkManager implements UpdateScheduler {
+    public final static String EXTRA_PAUSED = "paused";
+    private final static int REQUEST_CODE = 123, LEVEL_REQUEST_CODE = 124;
+    private final static UpdatePolicy updatePolicy = new UpdatePolicy();
+    //What was last scheduled, for dumpsys. 0 when nothing is
+    private static volatile long updateInterval, levelAlarmTime;
+    private final Context context;
 
-    public static void setRepeatingAlarm(Context context) {
+    private BatteryWorkManager(Context context) {
+        this.context = context;
+    }
+
+    public static UpdateScheduler getScheduler(Context context) {
+        return new BatteryWorkManager(context);
+    }
+
+    public static UpdatePolicy getUpdatePolicy() {
+        return updatePolicy;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void setRepeatingAlarm(long triggerAt, long interval) {
         AlarmManager alarmManager = ContextCompat.getSystemService(context, AlarmManager.class);
 
         if (alarmManager != null) {
-            stopRepeatingAlarm(context);
+            stopRepeatingAlarm();
 
             alarmManager.setInexactRepeating(
                     AlarmManager.ELAPSED_REALTIME,
-                    SystemClock.elapsedRealtime() + ONE_MIN,
-                    ONE_MIN,
+                    triggerAt,
+                    interval,
                     getPendingIntent(context));
+            updateInterval = interval;
         }
     }
 
-    public static void stopRepeatingAlarm(Context context) {
+    //It does not wake the device, so it is delivered once the device is in use again, which restarts
+    //the refreshes if the process has died
+    @Override
+    public void setPausedAlarm(long triggerAt) {
+        AlarmManager alarmManager = ContextCompat.getSystemService(context, AlarmManager.class);
+
+        if (alarmManager != null) {
+            stopRepeatingAlarm();
+
+            alarmManager.set(
+                    AlarmManager.ELAPSED_REALTIME,
+                    triggerAt,
+                    PendingIntent.getBroadcast(
+                            context,
+                            REQUEST_CODE,
+                            new Intent(context, BatteryBroadcastReceiver.class)
+                                    .setAction(BatteryBroadcastReceiver.ACTION_UPDATE)
+                                    .putExtra(EXTRA_PAUSED, true),
+                            NotificationUtils.FLAG_IMMUTABLE | PendingIntent.FLAG_CANCEL_CURRENT));
+            updateInterval = UpdatePolicy.PAUSED_INTERVAL;
+        }
+    }
+
+    @Override
+    public void stopRepeatingAlarm() {
         AlarmManager alarmManager = ContextCompat.getSystemService(context, AlarmManager.class);
 
         if (alarmManager != null) {
             alarmManager.cancel(getPendingIntent(context));
+            updateInterval = 0;
         }
+    }
+
+    //One-shot wakeup alarm for a level alert, planned by LevelAlarmPlanner
+    @Override
+    public void setLevelAlarm(long triggerAt) {
+        AlarmManager alarmManager = ContextCompat.getSystemService(context, AlarmManager.class);
 
+        if (alarmManager != null) {
+            if (Build.VERSION.SDK_INT >= 23) {
+                alarmManager.setAndAllowWhileIdle(
+                        AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                        triggerAt,
+                        getLevelPendingIntent(context));
+            } else {
+                alarmManager.set(
+                        AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                        triggerAt,
+                        getLevelPendingIntent(context));
+            }
+
+            levelAlarmTime = triggerAt;
+        }
+    }
+
+    @Override
+    public void stopLevelAlarm() {
+        AlarmManager alarmManager = ContextCompat.getSystemService(context, AlarmManager.class);
+
+        if (alarmManager != null) {
+            alarmManager.cancel(getLevelPendingIntent(context));
+            levelAlarmTime = 0;
+        }
+    }
+
+    public static long getUpdateInterval() {
+        return updateInterval;
+    }
+
+    public static long getLevelAlarmTime() {
+        return levelAlarmTime;
+    }
+
+    private static PendingIntent getLevelPendingIntent(Context context) {
+        return PendingIntent.getBroadcast(
+                context,
+                LEVEL_REQUEST_CODE,
+                new Intent(context, BatteryBroadcastReceiver.class)
+                        .setAction(BatteryBroadcastReceiver.ACTION_LEVEL_ALARM),
+                NotificationUtils.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
     private static PendingIntent getPendingIntent(Context context) {
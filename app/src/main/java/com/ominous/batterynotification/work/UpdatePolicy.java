@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.work;
+
+import com.ominous.batterynotification.trace.TriggerSource;
+
+//Decides which update alarm is set and which triggers refresh, on an UpdateScheduler's clock. While
+//paused the repeating alarm is swapped for a single one that is delivered once the device is in use
+//again, and refreshes are skipped. Methods that can trigger a refresh return the source to publish,
+//or NO_PUBLISH
+public class UpdatePolicy {
+    public final static int NO_PUBLISH = -1;
+    public final static int ONE_MIN = 60000, PAUSED_INTERVAL = 15 * ONE_MIN;
+
+    private volatile boolean isPaused;
+
+    public boolean isPaused() {
+        return isPaused;
+    }
+
+    public void start(UpdateScheduler scheduler) {
+        scheduler.setRepeatingAlarm(scheduler.elapsedRealtime() + ONE_MIN, ONE_MIN);
+    }
+
+    public void stop(UpdateScheduler scheduler) {
+        scheduler.stopRepeatingAlarm();
+        scheduler.stopLevelAlarm();
+    }
+
+    //Returns true if it was not paused yet
+    public boolean pause(UpdateScheduler scheduler) {
+        if (isPaused) {
+            return false;
+        }
+
+        isPaused = true;
+        scheduler.setPausedAlarm(scheduler.elapsedRealtime() + PAUSED_INTERVAL);
+
+        return true;
+    }
+
+    //wasPaused also covers a pause from before the process was restarted, which isPaused does not know
+    public int resume(UpdateScheduler scheduler, boolean wasPaused) {
+        isPaused = false;
+
+        if (wasPaused) {
+            start(scheduler);
+
+            return TriggerSource.SCREEN_ON;
+        } else {
+            return NO_PUBLISH;
+        }
+    }
+
+    public int onUpdateAlarm(UpdateScheduler scheduler, boolean isPausedAlarm, boolean wasPaused) {
+        if (isPaused) {
+            //Still nobody looking, the refresh only feeds the alerts and history
+            scheduler.setPausedAlarm(scheduler.elapsedRealtime() + PAUSED_INTERVAL);
+
+            return TriggerSource.ALARM;
+        } else if (isPausedAlarm) {
+            return resume(scheduler, wasPaused);
+        } else {
+            return TriggerSource.ALARM;
+        }
+    }
+}
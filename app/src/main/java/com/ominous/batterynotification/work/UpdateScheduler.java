@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.work;
+
+//The clock and alarms that updates are scheduled on. BatteryWorkManager sets real alarms, the
+//simulation harness in the tests fast-forwards its own, and both run the same UpdatePolicy
+public interface UpdateScheduler {
+    long elapsedRealtime();
+
+    //Inexact and does not wake the device, first at triggerAt and then every interval
+    void setRepeatingAlarm(long triggerAt, long interval);
+
+    //Replaces the repeating alarm with a single one that does not wake the device either
+    void setPausedAlarm(long triggerAt);
+
+    void stopRepeatingAlarm();
+
+    //Wakes the device, even while idle
+    void setLevelAlarm(long triggerAt);
+
+    void stopLevelAlarm();
+}
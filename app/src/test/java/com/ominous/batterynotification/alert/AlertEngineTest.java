@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.alert;
+
+import android.os.BatteryManager;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//AlertEngine runs on every sample, so it has to stay allocation free. Runs on the JVM:
+//  ./gradlew testDebugUnitTest --tests '*AlertEngineTest'
+public class AlertEngineTest {
+    private final static int WARMUP_ITERATIONS = 200000, ITERATIONS = 2000000;
+
+    @Test
+    public void testEvaluateAllocations() {
+        AlertEngine alertEngine = new AlertEngine();
+        alertEngine.configure(450, 80, 15);
+
+        evaluate(alertEngine, 0, WARMUP_ITERATIONS);
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        int fired = evaluate(alertEngine, WARMUP_ITERATIONS, ITERATIONS);
+
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertTrue("Alerts never fired, so the benchmark did not exercise them", fired > 0);
+        //Leaves room for the measurement itself, but not for one allocation per call
+        assertTrue("evaluate allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void testHysteresisAndCooldown() {
+        AlertEngine alertEngine = new AlertEngine();
+        alertEngine.configure(450, 80, 15);
+
+        int charged = 1 << AlertEngine.ALERT_CHARGED;
+
+        assertEquals(charged, alertEngine.evaluate(0, 80, 300, BatteryManager.BATTERY_HEALTH_GOOD, true));
+        //Fires once, and only re-arms after dropping below the hysteresis band
+        assertEquals(0, alertEngine.evaluate(1000, 81, 300, BatteryManager.BATTERY_HEALTH_GOOD, true));
+        assertEquals(0, alertEngine.evaluate(2000, 79, 300, BatteryManager.BATTERY_HEALTH_GOOD, true));
+        assertEquals(0, alertEngine.evaluate(3000, 77, 300, BatteryManager.BATTERY_HEALTH_GOOD, true));
+        //Re-armed, but still cooling down
+        assertEquals(0, alertEngine.evaluate(4000, 80, 300, BatteryManager.BATTERY_HEALTH_GOOD, true));
+        assertEquals(charged, alertEngine.evaluate(15 * 60 * 1000, 80, 300, BatteryManager.BATTERY_HEALTH_GOOD, true));
+    }
+
+    @Test
+    public void testMissingLevel() {
+        AlertEngine alertEngine = new AlertEngine();
+        alertEngine.configure(450, 80, 15);
+
+        //A sample without the level is -1, which is not a low battery
+        assertEquals(0, alertEngine.evaluate(0, -1, 300, BatteryManager.BATTERY_HEALTH_GOOD, false));
+        assertEquals(1 << AlertEngine.ALERT_LOW, alertEngine.evaluate(1000, 15, 300, BatteryManager.BATTERY_HEALTH_GOOD, false));
+    }
+
+    //A day of samples a second apart, cycling through every alert's trigger and reset conditions
+    private static int evaluate(AlertEngine alertEngine, int from, int count) {
+        int fired = 0;
+
+        for (int i = from; i < from + count; i++) {
+            int phase = i % 86400;
+            boolean onCharger = phase < 43200;
+            int level = onCharger ? phase * 100 / 43200 : 100 - (phase - 43200) * 100 / 43200;
+            int temperature = 300 + (i % 3600) / 20;
+            int health = i % 50000 < 100 ? BatteryManager.BATTERY_HEALTH_OVERHEAT : BatteryManager.BATTERY_HEALTH_GOOD;
+
+            fired |= alertEngine.evaluate(i * 1000L, level, temperature, health, onCharger);
+        }
+
+        return Integer.bitCount(fired);
+    }
+}
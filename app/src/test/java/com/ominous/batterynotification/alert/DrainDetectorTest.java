@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.alert;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//Runs on the JVM: ./gradlew testDebugUnitTest --tests '*DrainDetectorTest'
+public class DrainDetectorTest {
+    private final static long HOUR = 60 * 60 * 1000;
+
+    private long now;
+    private int level;
+
+    @Test
+    public void testBaselineWarmup() {
+        DrainDetector drainDetector = new DrainDetector();
+
+        assertEquals(DrainDetector.NO_BASELINE, drainDetector.getBaseline(DrainDetector.SCREEN_OFF));
+        assertFalse(drain(drainDetector, 12, HOUR));
+
+        long baseline = drainDetector.getBaseline(DrainDetector.SCREEN_OFF);
+
+        //1% an hour, steady. The other screen state is learned separately
+        assertEquals(1, Float.intBitsToFloat((int) (baseline >>> 32)), 0.01);
+        assertEquals(0, Float.intBitsToFloat((int) baseline), 0.01);
+        assertEquals(DrainDetector.NO_BASELINE, drainDetector.getBaseline(DrainDetector.SCREEN_ON));
+
+        DrainDetector restored = new DrainDetector();
+        restored.setBaseline(DrainDetector.SCREEN_OFF, baseline);
+
+        assertEquals(baseline, restored.getBaseline(DrainDetector.SCREEN_OFF));
+    }
+
+    @Test
+    public void testFastDrainAlertsOnceAnInterval() {
+        DrainDetector drainDetector = new DrainDetector();
+
+        drain(drainDetector, 12, HOUR);
+
+        assertTrue(drain(drainDetector, 3, HOUR / 4));
+        //Still anomalous, but already alerted within the last 6 hours
+        assertFalse(drain(drainDetector, 12, HOUR / 4));
+        assertTrue(drain(drainDetector, 20, HOUR / 4));
+    }
+
+    //The monitor is killed between level drops, and must not lose the evidence or the rate limit
+    @Test
+    public void testRestoredStateCarriesOn() {
+        DrainDetector drainDetector = new DrainDetector();
+
+        drain(drainDetector, 12, HOUR);
+        //Twice the usual rate takes four drops to be sure of
+        drain(drainDetector, 1, HOUR / 2);
+
+        DrainDetector restored = restore(drainDetector);
+
+        assertEquals(drainDetector.getCusums(), restored.getCusums());
+        assertEquals(drainDetector.getLevel(), restored.getLevel());
+        assertTrue(drain(restored, 3, HOUR / 2));
+
+        //Starting over with only the baseline, the level being timed and the first drop are lost
+        DrainDetector forgotten = new DrainDetector();
+        forgotten.setBaseline(DrainDetector.SCREEN_OFF, drainDetector.getBaseline(DrainDetector.SCREEN_OFF));
+
+        assertFalse(drain(forgotten, 3, HOUR / 2));
+
+        drainDetector = restore(restored);
+
+        assertFalse(drain(drainDetector, 12, HOUR / 4));
+    }
+
+    @Test
+    public void testScreenChangeRestartsLevel() {
+        DrainDetector drainDetector = new DrainDetector();
+
+        drain(drainDetector, 2, HOUR);
+        assertTrue(drainDetector.getLevel() != DrainDetector.NO_LEVEL);
+
+        drainDetector.update(now, level, true, true, now);
+        assertEquals(now, drainDetector.getLevelEnteredAt());
+
+        drainDetector.update(now, level, false, true, now);
+        assertEquals(DrainDetector.NO_LEVEL, drainDetector.getLevel());
+    }
+
+    private static DrainDetector restore(DrainDetector drainDetector) {
+        DrainDetector restored = new DrainDetector();
+
+        for (int screen = DrainDetector.SCREEN_OFF; screen <= DrainDetector.SCREEN_ON; screen++) {
+            restored.setBaseline(screen, drainDetector.getBaseline(screen));
+        }
+
+        restored.setCusums(drainDetector.getCusums());
+        restored.setLevel(drainDetector.getLevel(), drainDetector.getLevelEnteredAt());
+        restored.setLastAlert(drainDetector.getLastAlert());
+
+        return restored;
+    }
+
+    //Drops one level every interval with the screen off, returning whether any drop alerted
+    private boolean drain(DrainDetector drainDetector, int drops, long interval) {
+        boolean isAnomaly = false;
+
+        if (level == 0) {
+            level = 100;
+            drainDetector.update(now, level, true, false, 0);
+        }
+
+        for (int i = 0; i < drops; i++) {
+            now += interval;
+            level--;
+            isAnomaly |= drainDetector.update(now, level, true, false, 0);
+        }
+
+        return isAnomaly;
+    }
+}
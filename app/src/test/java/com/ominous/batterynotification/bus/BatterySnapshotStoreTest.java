@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.bus;
+
+import com.ominous.batterynotification.util.BatterySnapshot;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+//Writers race to publish snapshots from a shared clock while readers check every snapshot they see.
+//Runs on the JVM: ./gradlew testDebugUnitTest --tests '*BatterySnapshotStoreTest'
+public class BatterySnapshotStoreTest {
+    private final static int WRITERS = 4, READERS = 4, UPDATES_PER_WRITER = 200000, WRITER_LAG = 16;
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        AtomicLong clock = new AtomicLong();
+        AtomicLong completedTime = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch writersLatch = new CountDownLatch(WRITERS);
+        ArrayList<Thread> threads = new ArrayList<>();
+
+        //Tracking and never empty, so get() never falls back to the sticky intent
+        BatterySnapshotStore.invalidate();
+        BatterySnapshotStore.update(createSnapshot(0));
+        BatterySnapshotStore.setTracking(true);
+
+        for (int i = 0; i < WRITERS; i++) {
+            threads.add(new Thread(() -> {
+                ArrayDeque<Long> pendingTimes = new ArrayDeque<>();
+
+                try {
+                    startLatch.await();
+
+                    for (int j = 0; j < UPDATES_PER_WRITER + WRITER_LAG; j++) {
+                        if (j < UPDATES_PER_WRITER) {
+                            pendingTimes.add(clock.incrementAndGet());
+                        }
+
+                        //Each writer's times increase, but are published a while after they were taken,
+                        //so whenever another writer runs in between they arrive out of order
+                        if (pendingTimes.size() > WRITER_LAG || j >= UPDATES_PER_WRITER) {
+                            long time = pendingTimes.remove();
+
+                            BatterySnapshotStore.update(createSnapshot(time));
+                            completedTime.accumulateAndGet(time, Math::max);
+
+                            long newestCompleted = completedTime.get();
+                            BatterySnapshot latest = BatterySnapshotStore.peek();
+
+                            if (latest == null || latest.elapsedRealtime < newestCompleted) {
+                                failure.compareAndSet(null, "Snapshot " + newestCompleted + " was replaced by an older one");
+                            }
+                        }
+                    }
+                } catch (InterruptedException | RuntimeException e) {
+                    failure.compareAndSet(null, e.toString());
+                } finally {
+                    writersLatch.countDown();
+                }
+            }));
+        }
+
+        for (int i = 0; i < READERS; i++) {
+            final boolean usePeek = i % 2 == 0;
+
+            threads.add(new Thread(() -> {
+                long lastSeen = 0;
+
+                try {
+                    startLatch.await();
+
+                    while (writersLatch.getCount() > 0) {
+                        BatterySnapshot snapshot = usePeek ? BatterySnapshotStore.peek() : BatterySnapshotStore.get(null);
+
+                        String error = checkSnapshot(snapshot);
+
+                        if (error != null) {
+                            failure.compareAndSet(null, error);
+                        } else if (snapshot.elapsedRealtime < lastSeen) {
+                            failure.compareAndSet(null, "Saw " + snapshot.elapsedRealtime + " after " + lastSeen);
+                        }
+
+                        lastSeen = Math.max(lastSeen, snapshot.elapsedRealtime);
+                    }
+                } catch (InterruptedException | RuntimeException e) {
+                    failure.compareAndSet(null, e.toString());
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        startLatch.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        BatterySnapshotStore.setTracking(false);
+
+        assertNull(failure.get(), failure.get());
+
+        BatterySnapshot latest = BatterySnapshotStore.peek();
+
+        assertEquals(clock.get(), latest.elapsedRealtime);
+        assertNull(checkSnapshot(latest));
+    }
+
+    @Test
+    public void testOlderSnapshotIsIgnored() {
+        BatterySnapshotStore.invalidate();
+        BatterySnapshotStore.update(createSnapshot(Long.MAX_VALUE - 1));
+
+        BatterySnapshot returned = BatterySnapshotStore.update(createSnapshot(Long.MAX_VALUE - 2));
+
+        assertEquals(Long.MAX_VALUE - 2, returned.elapsedRealtime);
+        assertEquals(Long.MAX_VALUE - 1, BatterySnapshotStore.peek().elapsedRealtime);
+        assertTrue(BatterySnapshotStore.peek() != returned);
+
+        BatterySnapshotStore.invalidate();
+    }
+
+    //Every field is derived from the time, so a snapshot mixing two updates does not add up
+    private static BatterySnapshot createSnapshot(long time) {
+        return new BatterySnapshot(time,
+                (int) (time % 101),
+                (int) (time % 500),
+                (int) (time % 5000),
+                (int) (time % 7),
+                (int) (time % 5),
+                (int) (time % 3));
+    }
+
+    private static String checkSnapshot(BatterySnapshot snapshot) {
+        if (snapshot == null) {
+            return "Snapshot was missing";
+        }
+
+        long time = snapshot.elapsedRealtime;
+
+        return snapshot.level == time % 101 &&
+                snapshot.temperature == time % 500 &&
+                snapshot.voltage == time % 5000 &&
+                snapshot.health == time % 7 &&
+                snapshot.status == time % 5 &&
+                snapshot.plugged == time % 3 ? null : "Snapshot " + time + " was half written";
+    }
+}
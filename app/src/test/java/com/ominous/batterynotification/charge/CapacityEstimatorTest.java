@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.ominous.batterynotification.charge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+//Runs on the JVM: ./gradlew testDebugUnitTest --tests '*CapacityEstimatorTest'
+public class CapacityEstimatorTest {
+    private final static int CAPACITY = 4000;
+
+    @Test
+    public void testWarmup() {
+        CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+        for (int i = 0; i < 2; i++) {
+            charge(capacityEstimator, 20, 80, CAPACITY);
+            assertEquals(CapacityEstimator.UNKNOWN, capacityEstimator.getCapacity());
+        }
+
+        charge(capacityEstimator, 20, 80, CAPACITY);
+
+        assertEquals(CAPACITY, capacityEstimator.getCapacity());
+        assertEquals(3, capacityEstimator.getSessions());
+        assertEquals(0, capacityEstimator.getRejected());
+    }
+
+    @Test
+    public void testShortSession() {
+        CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+        assertFalse(charge(capacityEstimator, 50, 55, CAPACITY));
+        assertEquals(0, capacityEstimator.getSessions());
+        assertEquals(0, capacityEstimator.getRejected());
+    }
+
+    @Test
+    public void testRejection() {
+        CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+        for (int i = 0; i < 3; i++) {
+            charge(capacityEstimator, 20, 80, CAPACITY);
+        }
+
+        //Outside of what any battery holds
+        assertTrue(charge(capacityEstimator, 20, 80, 100));
+        assertEquals(1, capacityEstimator.getRejected());
+
+        //Far from the estimate, until too many in a row say the battery changed
+        charge(capacityEstimator, 20, 80, 2 * CAPACITY);
+        charge(capacityEstimator, 20, 80, 2 * CAPACITY);
+
+        assertEquals(CAPACITY, capacityEstimator.getCapacity());
+        assertEquals(3, capacityEstimator.getRejected());
+        assertEquals(3, capacityEstimator.getSessions());
+
+        charge(capacityEstimator, 20, 80, 2 * CAPACITY);
+
+        assertEquals(3, capacityEstimator.getRejected());
+        assertEquals(4, capacityEstimator.getSessions());
+        assertTrue(capacityEstimator.getCapacity() > CAPACITY);
+    }
+
+    @Test
+    public void testStateRoundTrip() {
+        CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+        for (int i = 0; i < 4; i++) {
+            charge(capacityEstimator, 20, 80, CAPACITY + i * 50);
+        }
+
+        charge(capacityEstimator, 20, 80, 100);
+
+        CapacityEstimator restored = new CapacityEstimator();
+        restored.setState(capacityEstimator.getEstimate(), capacityEstimator.getFit());
+
+        assertEquals(capacityEstimator.getCapacity(), restored.getCapacity());
+        assertEquals(capacityEstimator.getDeviation(), restored.getDeviation());
+        assertEquals(capacityEstimator.getSessions(), restored.getSessions());
+        assertEquals(capacityEstimator.getRejected(), restored.getRejected());
+        assertEquals(capacityEstimator.getFit(), restored.getFit());
+    }
+
+    //A monitor restarted partway through a charge finishes the session it started
+    @Test
+    public void testSessionRoundTrip() {
+        CapacityEstimator continuous = new CapacityEstimator();
+        CapacityEstimator restarted = new CapacityEstimator();
+
+        assertEquals(CapacityEstimator.NO_SESSION, continuous.getSession());
+        assertFalse(continuous.isSessionOpen());
+
+        for (int level = 20; level <= 50; level++) {
+            update(continuous, level, true, CAPACITY);
+        }
+
+        assertTrue(continuous.isSessionOpen());
+
+        restarted.setSession(continuous.getSession(), continuous.getSessionCounters());
+
+        assertTrue(restarted.isSessionOpen());
+        assertEquals(continuous.getSession(), restarted.getSession());
+        assertEquals(continuous.getSessionCounters(), restarted.getSessionCounters());
+
+        for (int level = 51; level <= 80; level++) {
+            update(continuous, level, true, CAPACITY);
+            update(restarted, level, true, CAPACITY);
+        }
+
+        assertTrue(update(continuous, 80, false, CAPACITY));
+        assertTrue(update(restarted, 80, false, CAPACITY));
+
+        assertEquals(1, restarted.getSessions());
+        assertEquals(continuous.getEstimate(), restarted.getEstimate());
+        assertEquals(CapacityEstimator.NO_SESSION, restarted.getSession());
+        assertFalse(restarted.isSessionOpen());
+
+        //Without the session the restarted monitor would only have measured the second half
+        CapacityEstimator fresh = new CapacityEstimator();
+
+        for (int level = 51; level <= 80; level++) {
+            update(fresh, level, true, CAPACITY);
+        }
+
+        update(fresh, 80, false, CAPACITY);
+
+        assertEquals(1, fresh.getSessions());
+        assertTrue(restarted.getFit() != fresh.getFit());
+    }
+
+    @Test
+    public void testCounterReset() {
+        CapacityEstimator capacityEstimator = new CapacityEstimator();
+
+        for (int level = 20; level <= 50; level++) {
+            update(capacityEstimator, level, true, CAPACITY);
+        }
+
+        //The counter started over, so the session does too
+        capacityEstimator.update(51, true, 1000);
+
+        for (int level = 52; level <= 55; level++) {
+            update(capacityEstimator, level, true, CAPACITY);
+        }
+
+        assertFalse(update(capacityEstimator, 55, false, CAPACITY));
+        assertEquals(0, capacityEstimator.getSessions());
+    }
+
+    //Plugs in at from, charges to to and unplugs. Returns whether the unplug changed the state
+    private static boolean charge(CapacityEstimator capacityEstimator, int from, int to, int capacity) {
+        for (int level = from; level <= to; level++) {
+            update(capacityEstimator, level, true, capacity);
+        }
+
+        return update(capacityEstimator, to, false, capacity);
+    }
+
+    //The counter holds capacity / 100 mAh per level, in µAh, and is only passed when it would be read
+    private static boolean update(CapacityEstimator capacityEstimator, int level, boolean charging, int capacity) {
+        int chargeCounter = capacityEstimator.isCounterNeeded(level, charging) ? 100000 + level * capacity * 10 : 0;
+
+        return capacityEstimator.update(level, charging, chargeCounter);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.charge;
+
+import android.os.BatteryManager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//Runs on the JVM: ./gradlew testDebugUnitTest --tests '*ChargeCurvesTest'
+public class ChargeCurvesTest {
+    private final static int AC = BatteryManager.BATTERY_PLUGGED_AC, USB = BatteryManager.BATTERY_PLUGGED_USB;
+    private final static int CURRENT = 1500000;
+    private final static long LEVEL_DURATION = 60 * 1000;
+
+    @Test
+    public void testLearnsMeasuredLevels() {
+        ChargeCurves chargeCurves = new ChargeCurves();
+
+        //The first level is entered before the session started, so it is not measured
+        for (int level = 50; level <= 60; level++) {
+            chargeCurves.update((level - 50) * LEVEL_DURATION, level, true, AC, CURRENT);
+        }
+
+        //Levels that were never measured take the duration of the nearest measured one
+        assertEquals(40 * LEVEL_DURATION, chargeCurves.getTimeToFull(10 * LEVEL_DURATION, 60, AC));
+        //Part of the current level is already done
+        assertEquals(40 * LEVEL_DURATION - 20000, chargeCurves.getTimeToFull(10 * LEVEL_DURATION + 20000, 60, AC));
+        assertEquals(0, chargeCurves.getTimeToFull(0, 100, AC));
+        assertEquals(ChargeCurves.UNKNOWN, chargeCurves.getTimeToFull(0, 60, USB));
+    }
+
+    @Test
+    public void testSkippedLevelsShareTheTime() {
+        ChargeCurves chargeCurves = new ChargeCurves();
+
+        chargeCurves.update(0, 50, true, AC, CURRENT);
+        chargeCurves.update(LEVEL_DURATION, 51, true, AC, CURRENT);
+        assertTrue(chargeCurves.update(3 * LEVEL_DURATION, 53, true, AC, CURRENT) >= 0);
+
+        assertEquals(47 * LEVEL_DURATION, chargeCurves.getTimeToFull(3 * LEVEL_DURATION, 53, AC));
+    }
+
+    @Test
+    public void testInterpolation() throws IOException {
+        ChargeCurves chargeCurves = new ChargeCurves();
+        char[] durations = new char[ChargeCurves.LEVELS];
+
+        durations[0] = 100;
+        durations[90] = 10;
+
+        chargeCurves.read(getCurves(durations));
+
+        //100 down to 11 seconds for the levels in between, and the last measured level's 10 above it
+        assertEquals((4995 + 10 * 10) * 1000L, chargeCurves.getTimeToFull(0, 0, AC));
+        assertEquals(10 * 10 * 1000L, chargeCurves.getTimeToFull(0, 90, AC));
+    }
+
+    //The monitor is killed between updates, and has to pick the session up where it left off
+    @Test
+    public void testSessionSurvivesRestart() throws IOException {
+        ChargeCurves chargeCurves = new ChargeCurves();
+
+        chargeCurves.update(0, 50, true, AC, CURRENT);
+        chargeCurves.update(LEVEL_DURATION, 51, true, AC, CURRENT);
+
+        ChargeCurves restarted = copy(chargeCurves);
+        restarted.setSession(chargeCurves.getSession(), chargeCurves.getLevelEnteredAt());
+
+        assertTrue(restarted.update(2 * LEVEL_DURATION, 52, true, AC, CURRENT) >= 0);
+        assertEquals(48 * LEVEL_DURATION, restarted.getTimeToFull(2 * LEVEL_DURATION, 52, AC));
+
+        //Without the session, the level the monitor restarted in is not measured
+        ChargeCurves forgotten = copy(chargeCurves);
+
+        assertEquals(-1, forgotten.update(2 * LEVEL_DURATION, 52, true, AC, CURRENT));
+    }
+
+    @Test
+    public void testUnpluggingEndsSession() {
+        ChargeCurves chargeCurves = new ChargeCurves();
+
+        chargeCurves.update(0, 50, true, AC, CURRENT);
+        assertTrue(chargeCurves.getSession() != ChargeCurves.NO_SESSION);
+
+        chargeCurves.update(LEVEL_DURATION, 50, false, 0, 0);
+        assertEquals(ChargeCurves.NO_SESSION, chargeCurves.getSession());
+    }
+
+    private static ChargeCurves copy(ChargeCurves chargeCurves) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        for (int curve = 0; curve < ChargeCurves.CURVES; curve++) {
+            chargeCurves.writeCurve(curve, output);
+        }
+
+        ChargeCurves result = new ChargeCurves();
+        result.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        return result;
+    }
+
+    //The durations as the first curve, which is AC at the lowest current
+    private static DataInputStream getCurves(char[] durations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        for (int curve = 0; curve < ChargeCurves.CURVES; curve++) {
+            for (int level = 0; level < ChargeCurves.LEVELS; level++) {
+                output.writeChar(curve == 0 ? durations[level] : 0);
+            }
+        }
+
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
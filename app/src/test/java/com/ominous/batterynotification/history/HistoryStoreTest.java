@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+//Runs on the JVM: ./gradlew testDebugUnitTest --tests '*HistoryStoreTest'
+public class HistoryStoreTest {
+    private final static long START = 1700000000000L - 1700000000000L % HistoryStore.DAY;
+    private final static long SAMPLE_INTERVAL = 40 * 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private int added;
+
+    @Test
+    public void testRollupTierBuckets() throws IOException {
+        RollupTier tier = new RollupTier(temporaryFolder.newFile(), 5 * HistoryStore.MINUTE, HistoryStore.DAY);
+        HistoryBucket sample = new HistoryBucket();
+
+        sample.set(START + HistoryStore.MINUTE, 50, 300, -100, 0);
+        assertNull(tier.add(sample));
+        sample.set(START + 4 * HistoryStore.MINUTE, 48, 310, -300, 1000);
+        assertNull(tier.add(sample));
+
+        //The first sample of the next bucket closes the previous one
+        sample.set(START + 5 * HistoryStore.MINUTE, 47, 320, -200, 0);
+        HistoryBucket closed = tier.add(sample);
+
+        assertNotNull(closed);
+        assertEquals(START, closed.start);
+        assertEquals(2, closed.count);
+        assertEquals(1000, closed.chargingMillis);
+        assertEquals(48, closed.levelMin);
+        assertEquals(50, closed.levelMax);
+        assertEquals(49, closed.levelMean, 0.001);
+        assertEquals(305, closed.temperatureMean, 0.001);
+        assertEquals(-300, closed.currentMin);
+        assertEquals(-100, closed.currentMax);
+
+        //Samples from before the last closed bucket are already rolled up
+        sample.set(START + 2 * HistoryStore.MINUTE, 10, 300, 0, 0);
+        assertNull(tier.add(sample));
+
+        HistorySeries.Builder builder = new HistorySeries.Builder(tier.bucketDuration);
+        tier.read(START, START + HistoryStore.HOUR, builder);
+        HistorySeries series = builder.build();
+
+        assertEquals(2, series.buckets.length);
+        assertEquals(START, series.buckets[0].start);
+        assertEquals(2, series.buckets[0].count);
+        assertEquals(START + 5 * HistoryStore.MINUTE, series.buckets[1].start);
+        assertEquals(47, series.buckets[1].levelMin);
+    }
+
+    @Test
+    public void testQueryTiers() throws IOException {
+        HistoryStore store = new HistoryStore(temporaryFolder.newFolder());
+        long end = fill(store, START, 6 * HistoryStore.HOUR);
+
+        assertEquals(0, store.query(end - HistoryStore.HOUR, end, 1000, end).bucketDuration);
+        assertEquals(5 * HistoryStore.MINUTE, store.query(end - 3 * HistoryStore.HOUR, end, 36, end).bucketDuration);
+        assertEquals(HistoryStore.HOUR, store.query(START, end, 6, end).bucketDuration);
+
+        //The five minute buckets hold every sample, the last one still open
+        int count = 0;
+
+        for (HistoryBucket bucket : store.query(START, end, 72, end).buckets) {
+            count += bucket.count;
+        }
+
+        assertEquals(added, count);
+    }
+
+    //A cold start only replays the tails of each file, and has to end up where a process that never died would
+    @Test
+    public void testReloadMatchesContinuous() throws IOException {
+        HistoryStore store = new HistoryStore(temporaryFolder.newFolder());
+        File directory = temporaryFolder.newFolder();
+        long end = fill(new HistoryStore(directory), START, 3 * HistoryStore.HOUR + 7 * HistoryStore.MINUTE);
+
+        fill(store, START, end - START);
+
+        HistoryStore reloaded = new HistoryStore(directory);
+
+        assertSeriesEquals(store.query(START, end, 3, end), reloaded.query(START, end, 3, end));
+        assertSeriesEquals(store.query(START, end, 36, end), reloaded.query(START, end, 36, end));
+        assertSeriesEquals(store.query(end - HistoryStore.HOUR, end, 1000, end), reloaded.query(end - HistoryStore.HOUR, end, 1000, end));
+
+        //Both keep going the same way, charging time across the restart included
+        fill(store, end, HistoryStore.HOUR);
+        end = fill(reloaded, end, HistoryStore.HOUR);
+
+        assertSeriesEquals(store.query(START, end, 4, end), reloaded.query(START, end, 4, end));
+        assertSeriesEquals(store.query(START, end, 48, end), reloaded.query(START, end, 48, end));
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        HistoryStore store = new HistoryStore(temporaryFolder.newFolder());
+        long end = fill(store, START, HistoryStore.DAY);
+        int firstDay = added;
+
+        end = fill(store, end, HistoryStore.DAY);
+        store.compact(end);
+
+        HistorySeries raw = store.query(end - HistoryStore.DAY, end, 100000, end);
+
+        assertEquals(added - firstDay, raw.buckets.length);
+        assertEquals(end - HistoryStore.DAY, raw.buckets[0].start);
+        //The five minute tier keeps both days, with two buckets an hour falling in the gap
+        assertEquals(2 * 24 * 10, store.query(START, end, 100, end).buckets.length);
+    }
+
+    //Charging for the first half, with a gap long enough to lose track of the charger in the middle of each hour
+    private long fill(HistoryStore store, long from, long duration) throws IOException {
+        long time = from;
+
+        for (; time < from + duration; time += SAMPLE_INTERVAL) {
+            if (time % HistoryStore.HOUR < 20 * HistoryStore.MINUTE || time % HistoryStore.HOUR >= 31 * HistoryStore.MINUTE) {
+                long elapsed = time - START;
+
+                store.add(time, (int) (elapsed / HistoryStore.MINUTE % 101), 300 + (int) (elapsed / SAMPLE_INTERVAL % 50),
+                        (int) (elapsed % 1000) - 500, time % HistoryStore.DAY < HistoryStore.DAY / 2);
+                added++;
+            }
+        }
+
+        return time;
+    }
+
+    private static void assertSeriesEquals(HistorySeries expected, HistorySeries actual) {
+        assertEquals(expected.bucketDuration, actual.bucketDuration);
+        assertEquals(expected.buckets.length, actual.buckets.length);
+
+        for (int i = 0; i < expected.buckets.length; i++) {
+            HistoryBucket expectedBucket = expected.buckets[i], actualBucket = actual.buckets[i];
+
+            assertEquals(expectedBucket.start, actualBucket.start);
+            assertEquals(expectedBucket.count, actualBucket.count);
+            assertEquals(expectedBucket.chargingMillis, actualBucket.chargingMillis);
+            assertEquals(expectedBucket.levelMin, actualBucket.levelMin);
+            assertEquals(expectedBucket.levelMax, actualBucket.levelMax);
+            assertEquals(expectedBucket.levelMean, actualBucket.levelMean, 0.001);
+            assertEquals(expectedBucket.temperatureMean, actualBucket.temperatureMean, 0.001);
+            assertEquals(expectedBucket.currentMin, actualBucket.currentMin);
+            assertEquals(expectedBucket.currentMax, actualBucket.currentMax);
+            assertEquals(expectedBucket.currentMean, actualBucket.currentMean, 0.01);
+        }
+    }
+}
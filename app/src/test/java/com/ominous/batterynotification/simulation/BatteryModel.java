@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.simulation;
+
+//Ground truth for the simulation. Charging is constant current up to 80% and then tapers off, and the
+//temperature approaches a target set by the charger and the screen with a ten minute time constant
+class BatteryModel {
+    private final static double CHARGE_RATE = 1. / 60, MIN_CHARGE_RATE = 0.05 / 60;
+    private final static double SCREEN_ON_DRAIN = 12. / 3600, SCREEN_OFF_DRAIN = 0.8 / 3600;
+    private final static double AMBIENT_TEMPERATURE = 27, CHARGING_HEAT = 10, TAPER_HEAT = 4, SCREEN_HEAT = 5;
+    private final static double TEMPERATURE_TIME_CONSTANT = 600;
+
+    private double level;
+    private double temperature = AMBIENT_TEMPERATURE;
+    private boolean isCharging;
+    private boolean isScreenOn;
+
+    BatteryModel(double level) {
+        this.level = level;
+    }
+
+    //Returns true if a value in ACTION_BATTERY_CHANGED changed, which is when the system broadcasts it
+    boolean step(double seconds) {
+        int oldLevel = getLevel(), oldTemperature = getTemperature();
+
+        if (isCharging) {
+            level = Math.min(100, level + seconds * (level < 80 ? CHARGE_RATE : Math.max(CHARGE_RATE * (100 - level) / 20, MIN_CHARGE_RATE)));
+        } else {
+            level = Math.max(0, level - seconds * (isScreenOn ? SCREEN_ON_DRAIN : SCREEN_OFF_DRAIN));
+        }
+
+        double target = AMBIENT_TEMPERATURE +
+                (isCharging ? (level < 80 ? CHARGING_HEAT : TAPER_HEAT) : 0) +
+                (isScreenOn ? SCREEN_HEAT : 0);
+
+        temperature += (target - temperature) * Math.min(seconds / TEMPERATURE_TIME_CONSTANT, 1);
+
+        return oldLevel != getLevel() || oldTemperature != getTemperature();
+    }
+
+    void setCharging(boolean isCharging) {
+        this.isCharging = isCharging;
+    }
+
+    void setScreenOn(boolean isScreenOn) {
+        this.isScreenOn = isScreenOn;
+    }
+
+    boolean isCharging() {
+        return isCharging;
+    }
+
+    int getLevel() {
+        return (int) level;
+    }
+
+    //Tenths of a degree, like EXTRA_TEMPERATURE
+    int getTemperature() {
+        return (int) Math.round(temperature * 10);
+    }
+}
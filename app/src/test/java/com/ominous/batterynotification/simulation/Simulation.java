@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.simulation;
+
+import android.os.BatteryManager;
+
+import com.ominous.batterynotification.alert.AlertPolicy;
+import com.ominous.batterynotification.trace.TriggerSource;
+import com.ominous.batterynotification.work.UpdatePolicy;
+import com.ominous.batterynotification.work.UpdateScheduler;
+
+import java.util.Random;
+
+//Fast-forwards simulated days through the update paths, one second per step, to compare scheduling
+//policies by the numbers. UpdatePolicy and AlertPolicy are the real classes, scheduling their alarms
+//on this class's clock, while the receivers around them are reduced to the calls they make. The
+//device is assumed to be awake only while the screen is on, the process is never killed, and Doze
+//is not modelled.
+//
+//Runs as part of the unit tests, see SimulationTest:
+//  ./gradlew testDebugUnitTest --tests '*SimulationTest' -PprintSimulation
+class Simulation implements UpdateScheduler {
+    //Rough CPU milliseconds per event, only meant to compare policies against each other
+    private final static double COST_BROADCAST = 1.5, COST_REGISTERED_BROADCAST = 0.5, COST_CURRENT = 0.3,
+            COST_NOTIFY = 3, COST_ALERTS = 0.1, COST_DEVICE_WAKE = 20;
+    private final static double INEXACT_WINDOW = 0.75;
+    private final static int ALARM_UPDATE = 0, ALARM_LEVEL = 1, ALARM_COUNT = 2;
+    private final static long NO_ALARM = -1;
+
+    private final boolean isUpdatingImmediately, isPauseEnabled, isAlertsEnabled;
+    private final UsageScenario scenario;
+    private final BatteryModel batteryModel = new BatteryModel(60);
+    private final UpdatePolicy updatePolicy = new UpdatePolicy();
+    private final AlertPolicy alertPolicy = new AlertPolicy();
+    private final Random random;
+    private final SimulationReport report;
+
+    //In seconds
+    private final long[] alarmTimes = {NO_ALARM, NO_ALARM};
+    private final long[] alarmNominalTimes = new long[ALARM_COUNT];
+    private final int[] alarmIntervals = new int[ALARM_COUNT];
+    private final boolean[] alarmWakeups = new boolean[ALARM_COUNT];
+    private boolean isPausedAlarm;
+
+    private int now;
+    private boolean isScreenOn;
+    private int screenChangedAt;
+    private int shownLevel = -1, shownTemperature = -1;
+    private int levelStaleSince = -1, temperatureStaleSince = -1;
+
+    Simulation(String policy, boolean isUpdatingImmediately, boolean isPauseEnabled, boolean isAlertsEnabled,
+               UsageScenario scenario, long seed) {
+        this.isUpdatingImmediately = isUpdatingImmediately;
+        this.isPauseEnabled = isPauseEnabled;
+        this.isAlertsEnabled = isAlertsEnabled;
+        this.scenario = scenario;
+        this.random = new Random(seed);
+
+        report = new SimulationReport(policy);
+        alertPolicy.getAlertEngine().configure(450, 80, 15);
+    }
+
+    SimulationReport run() {
+        isScreenOn = scenario.isScreenOn(0);
+        batteryModel.setScreenOn(isScreenOn);
+        batteryModel.setCharging(scenario.isCharging(0));
+
+        //Application.onCreate, then startBatteryNotification
+        if (isPauseEnabled && !isScreenOn) {
+            updatePolicy.pause(this);
+        }
+
+        publish(TriggerSource.SETTINGS);
+        updatePolicy.start(this);
+
+        for (now = 0; now < scenario.getDuration(); now++) {
+            boolean isBatteryChanged = false;
+
+            if (scenario.isCharging(now) != batteryModel.isCharging()) {
+                batteryModel.setCharging(scenario.isCharging(now));
+                isBatteryChanged = true;
+
+                onBroadcast(COST_BROADCAST);
+                publish(TriggerSource.POWER_CONNECTED);
+            }
+
+            if (scenario.isScreenOn(now) != isScreenOn) {
+                isScreenOn = scenario.isScreenOn(now);
+                screenChangedAt = now;
+                batteryModel.setScreenOn(isScreenOn);
+
+                onBroadcast(COST_REGISTERED_BROADCAST);
+
+                //ScreenStateReceiver.onReceive, which survives with the process so isPaused is the whole story
+                if (isScreenOn) {
+                    publish(updatePolicy.resume(this, updatePolicy.isPaused()));
+                } else if (isPauseEnabled) {
+                    updatePolicy.pause(this);
+                }
+            }
+
+            isBatteryChanged |= batteryModel.step(1);
+
+            //BatteryService
+            if (isBatteryChanged && isUpdatingImmediately) {
+                onBroadcast(COST_REGISTERED_BROADCAST);
+                publish(TriggerSource.SERVICE);
+            }
+
+            deliverAlarms();
+
+            if (isScreenOn) {
+                measureStaleness();
+            }
+        }
+
+        return report;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return now * 1000L;
+    }
+
+    @Override
+    public void setRepeatingAlarm(long triggerAt, long interval) {
+        setAlarm(ALARM_UPDATE, triggerAt, false, interval);
+        isPausedAlarm = false;
+    }
+
+    @Override
+    public void setPausedAlarm(long triggerAt) {
+        setAlarm(ALARM_UPDATE, triggerAt, false, 0);
+        isPausedAlarm = true;
+    }
+
+    @Override
+    public void stopRepeatingAlarm() {
+        alarmTimes[ALARM_UPDATE] = NO_ALARM;
+    }
+
+    @Override
+    public void setLevelAlarm(long triggerAt) {
+        setAlarm(ALARM_LEVEL, triggerAt, true, 0);
+    }
+
+    @Override
+    public void stopLevelAlarm() {
+        alarmTimes[ALARM_LEVEL] = NO_ALARM;
+    }
+
+    private void onBroadcast(double cost) {
+        report.cpuMillis += cost;
+
+        if (!isScreenOn) {
+            report.appWakeups++;
+        }
+    }
+
+    //BatterySampleBus.publish with NotificationSink and AlertSink subscribed
+    private void publish(int source) {
+        if (source == UpdatePolicy.NO_PUBLISH) {
+            return;
+        }
+
+        int level = batteryModel.getLevel();
+        int temperature = batteryModel.getTemperature();
+
+        if (updatePolicy.isPaused()) {
+            report.skippedPosts++;
+        } else {
+            report.notificationPosts++;
+            report.cpuMillis += COST_CURRENT + COST_NOTIFY;
+
+            shownLevel = level;
+            shownTemperature = temperature;
+        }
+
+        if (isAlertsEnabled) {
+            report.cpuMillis += COST_ALERTS;
+
+            int firedAlerts = alertPolicy.evaluate(this, elapsedRealtime(), level, temperature,
+                    BatteryManager.BATTERY_HEALTH_GOOD,
+                    batteryModel.isCharging() ? BatteryManager.BATTERY_STATUS_CHARGING : BatteryManager.BATTERY_STATUS_DISCHARGING,
+                    isUpdatingImmediately, isScreenOn, screenChangedAt * 1000L);
+
+            report.alertPosts += Integer.bitCount(firedAlerts);
+            report.cpuMillis += Integer.bitCount(firedAlerts) * COST_NOTIFY;
+        }
+    }
+
+    //BatteryBroadcastReceiver.onReceive
+    private void onAlarm(int alarm, boolean isPausedAlarm) {
+        onBroadcast(COST_BROADCAST);
+
+        if (alarm == ALARM_LEVEL) {
+            publish(TriggerSource.LEVEL_ALARM);
+        } else {
+            //The paused start is kept exactly as long as the paused alarm is pending
+            publish(updatePolicy.onUpdateAlarm(this, isPausedAlarm, isPausedAlarm));
+        }
+    }
+
+    private void setAlarm(int alarm, long triggerAt, boolean isWakeup, long interval) {
+        alarmNominalTimes[alarm] = triggerAt / 1000;
+        alarmIntervals[alarm] = (int) (interval / 1000);
+        alarmWakeups[alarm] = isWakeup;
+        alarmTimes[alarm] = getDeliveryTime(alarmNominalTimes[alarm], alarmIntervals[alarm]);
+    }
+
+    //Inexact repeating alarms can be delivered anywhere in the first 75% of their interval
+    private long getDeliveryTime(long nominalTime, int interval) {
+        return interval > 0 ? nominalTime + random.nextInt((int) (interval * INEXACT_WINDOW) + 1) : nominalTime;
+    }
+
+    //Non-wakeup alarms wait until the device is awake
+    private void deliverAlarms() {
+        for (int alarm = 0; alarm < ALARM_COUNT; alarm++) {
+            if (alarmTimes[alarm] != NO_ALARM && now >= alarmTimes[alarm] && (alarmWakeups[alarm] || isScreenOn)) {
+                boolean wasPausedAlarm = alarm == ALARM_UPDATE && isPausedAlarm;
+
+                if (!isScreenOn) {
+                    report.deviceWakeups++;
+                    report.cpuMillis += COST_DEVICE_WAKE;
+                }
+
+                if (alarmIntervals[alarm] > 0) {
+                    //Missed repetitions are collapsed into one delivery
+                    long nominalTime = alarmNominalTimes[alarm] + alarmIntervals[alarm];
+
+                    if (nominalTime <= now) {
+                        nominalTime += (now - nominalTime) / alarmIntervals[alarm] * alarmIntervals[alarm] + alarmIntervals[alarm];
+                    }
+
+                    alarmNominalTimes[alarm] = nominalTime;
+                    alarmTimes[alarm] = getDeliveryTime(nominalTime, alarmIntervals[alarm]);
+                } else {
+                    alarmTimes[alarm] = NO_ALARM;
+                }
+
+                onAlarm(alarm, wasPausedAlarm);
+            }
+        }
+    }
+
+    //Staleness only counts while someone could be looking at the notification
+    private void measureStaleness() {
+        boolean isLevelStale = shownLevel != batteryModel.getLevel();
+        //The temperature is always drifting, so only count it once it is off by a whole degree
+        boolean isTemperatureStale = Math.abs(shownTemperature - batteryModel.getTemperature()) >= 10;
+
+        levelStaleSince = isLevelStale ? (levelStaleSince < 0 ? now : levelStaleSince) : -1;
+        temperatureStaleSince = isTemperatureStale ? (temperatureStaleSince < 0 ? now : temperatureStaleSince) : -1;
+
+        report.addLag(
+                levelStaleSince < 0 ? 0 : now - levelStaleSince,
+                temperatureStaleSince < 0 ? 0 : now - temperatureStaleSince);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.simulation;
+
+import java.util.Locale;
+
+class SimulationReport {
+    private final static int MAX_LAG = 6 * 60 * 60;
+
+    final String policy;
+    int appWakeups;
+    int deviceWakeups;
+    int notificationPosts;
+    int skippedPosts;
+    int alertPosts;
+    double cpuMillis;
+    //Seconds the screen was on with the shown value that far behind the truth
+    private final long[] levelLags = new long[MAX_LAG + 1];
+    private final long[] temperatureLags = new long[MAX_LAG + 1];
+    private int maxLevelLag, maxTemperatureLag;
+
+    SimulationReport(String policy) {
+        this.policy = policy;
+    }
+
+    void addLag(int levelLag, int temperatureLag) {
+        levelLags[Math.min(levelLag, MAX_LAG)]++;
+        temperatureLags[Math.min(temperatureLag, MAX_LAG)]++;
+        maxLevelLag = Math.max(maxLevelLag, levelLag);
+        maxTemperatureLag = Math.max(maxTemperatureLag, temperatureLag);
+    }
+
+    int getLevelLagPercentile(double percentile) {
+        return getPercentile(levelLags, percentile);
+    }
+
+    int getTemperatureLagPercentile(double percentile) {
+        return getPercentile(temperatureLags, percentile);
+    }
+
+    static String getHeader() {
+        return String.format(Locale.US, "%-22s %9s %9s %7s %7s %7s %14s %14s %10s",
+                "policy", "wakeups", "dev wake", "posts", "skipped", "alerts", "level p95/max", "temp p95/max", "cpu s/day");
+    }
+
+    String format(int days) {
+        return String.format(Locale.US, "%-22s %9d %9d %7d %7d %7d %6ds/%6ds %6ds/%6ds %10.2f",
+                policy,
+                appWakeups,
+                deviceWakeups,
+                notificationPosts,
+                skippedPosts,
+                alertPosts,
+                getPercentile(levelLags, 0.95), maxLevelLag,
+                getPercentile(temperatureLags, 0.95), maxTemperatureLag,
+                cpuMillis / 1000 / days);
+    }
+
+    private static int getPercentile(long[] histogram, double percentile) {
+        long total = 0;
+
+        for (long count : histogram) {
+            total += count;
+        }
+
+        long target = (long) Math.ceil(total * percentile), seen = 0;
+
+        for (int lag = 0; lag < histogram.length; lag++) {
+            seen += histogram[lag];
+
+            if (seen >= target && total > 0) {
+                return lag;
+            }
+        }
+
+        return 0;
+    }
+}
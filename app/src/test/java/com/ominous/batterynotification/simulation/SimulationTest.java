@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.simulation;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//Compares the update policies over a simulated week, see Simulation. Runs on the JVM, and prints the
+//table with: ./gradlew testDebugUnitTest --tests '*SimulationTest' -PprintSimulation
+public class SimulationTest {
+    private final static int DAYS = 7;
+    private final static long SEED = 1;
+
+    private static SimulationReport alarm, alarmPause, alarmAlerts, alarmPauseAlerts, service, servicePause;
+
+    @BeforeClass
+    public static void simulate() {
+        UsageScenario scenario = new UsageScenario(DAYS, SEED);
+
+        alarm = new Simulation("alarm", false, false, false, scenario, SEED).run();
+        alarmPause = new Simulation("alarm+pause", false, true, false, scenario, SEED).run();
+        alarmAlerts = new Simulation("alarm+alerts", false, false, true, scenario, SEED).run();
+        alarmPauseAlerts = new Simulation("alarm+pause+alerts", false, true, true, scenario, SEED).run();
+        service = new Simulation("service", true, false, false, scenario, SEED).run();
+        servicePause = new Simulation("service+pause", true, true, false, scenario, SEED).run();
+
+        if (Boolean.getBoolean("printSimulation")) {
+            System.out.println(SimulationReport.getHeader());
+
+            for (SimulationReport report : new SimulationReport[]{alarm, alarmPause, alarmAlerts, alarmPauseAlerts, service, servicePause}) {
+                System.out.println(report.format(DAYS));
+            }
+        }
+    }
+
+    //Only the level alarm may wake the device, the update alarms wait for it to be in use
+    @Test
+    public void testNoDeviceWakeupsWithoutAlerts() {
+        for (SimulationReport report : new SimulationReport[]{alarm, alarmPause, service, servicePause}) {
+            assertEquals(report.policy, 0, report.deviceWakeups);
+        }
+    }
+
+    @Test
+    public void testPauseSkipsRefreshes() {
+        assertTrue(alarmPause.skippedPosts > 0);
+        assertTrue(alarmPause.notificationPosts < alarm.notificationPosts);
+        assertTrue(alarmPauseAlerts.notificationPosts < alarmAlerts.notificationPosts);
+        assertEquals(0, alarm.skippedPosts);
+    }
+
+    @Test
+    public void testServiceIsFresher() {
+        assertTrue(service.getLevelLagPercentile(0.95) <= alarm.getLevelLagPercentile(0.95));
+        assertTrue(servicePause.getLevelLagPercentile(0.95) <= alarmPause.getLevelLagPercentile(0.95));
+    }
+}
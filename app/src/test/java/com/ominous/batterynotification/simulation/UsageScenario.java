@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 - 2025 Tyler Williamson
+ *
+ * This file is part of BatteryNotification.
+ *
+ * BatteryNotification is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BatteryNotification is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BatteryNotification.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.ominous.batterynotification.simulation;
+
+import java.util.Random;
+
+//A day of use: asleep and charging overnight, short screen sessions through the day and an evening
+//top-up. Sessions are drawn from a seeded Random, so every policy sees exactly the same day
+class UsageScenario {
+    private final static int DAY = 24 * 60 * 60;
+    private final static int WAKE_UP = 7 * 60 * 60, BED_TIME = 23 * 60 * 60;
+    private final static int OVERNIGHT_CHARGE_START = 23 * 60 * 60 + 30 * 60, OVERNIGHT_CHARGE_END = 6 * 60 * 60;
+    private final static int TOP_UP_START = 18 * 60 * 60, TOP_UP_END = 18 * 60 * 60 + 30 * 60;
+
+    private final boolean[] screenOn;
+
+    UsageScenario(int days, long seed) {
+        Random random = new Random(seed);
+
+        screenOn = new boolean[days * DAY];
+
+        for (int day = 0; day < days; day++) {
+            int second = day * DAY + WAKE_UP;
+
+            while (second < day * DAY + BED_TIME) {
+                //Idle for 10 to 60 minutes, then use the phone for 1 to 15 minutes
+                second += (10 + random.nextInt(50)) * 60;
+
+                int end = Math.min(second + (1 + random.nextInt(15)) * 60, day * DAY + BED_TIME);
+
+                for (; second < end; second++) {
+                    screenOn[second] = true;
+                }
+            }
+        }
+    }
+
+    int getDuration() {
+        return screenOn.length;
+    }
+
+    boolean isScreenOn(int second) {
+        return screenOn[second];
+    }
+
+    boolean isCharging(int second) {
+        int timeOfDay = second % DAY;
+
+        return timeOfDay >= OVERNIGHT_CHARGE_START || timeOfDay < OVERNIGHT_CHARGE_END ||
+                (timeOfDay >= TOP_UP_START && timeOfDay < TOP_UP_END);
+    }
+}